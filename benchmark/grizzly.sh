@@ -0,0 +1,3 @@
+#!/bin/bash
+
+./setup.sh -Dsabina.backend=grizzly -Dsabina.benchmark.repository=mysql
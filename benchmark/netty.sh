@@ -0,0 +1,3 @@
+#!/bin/bash
+
+./setup.sh -Dsabina.backend=netty -Dsabina.benchmark.repository=mysql
@@ -99,11 +99,6 @@ final class Application {
         }
     }
 
-    private static Object getPlaintext (Request it) {
-        it.response.type (CONTENT_TYPE_TEXT);
-        return MESSAGE;
-    }
-
     private static Object getJson (Request it) {
         it.response.type (CONTENT_TYPE_JSON);
         return toJson (new Message ());
@@ -115,12 +110,12 @@ final class Application {
     }
 
     public static void main (String[] args) {
-        get ("/json", Application::getJson);
+        get ("/json", nonBlocking (Application::getJson));
         get ("/db", Application::getDb);
         get ("/query", Application::getDb);
         get ("/fortune", Application::getFortunes);
         get ("/update", Application::getUpdates);
-        get ("/plaintext", Application::getPlaintext);
+        get ("/plaintext", constant (CONTENT_TYPE_TEXT, MESSAGE));
         after (Application::addCommonHeaders);
 
         Properties settings = loadConfiguration ();
@@ -0,0 +1,3 @@
+#!/bin/bash
+
+./setup.sh -Dsabina.backend=undertow-native -Dsabina.benchmark.repository=mysql
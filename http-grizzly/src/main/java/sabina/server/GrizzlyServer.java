@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.util.EnumSet.of;
+import static javax.servlet.DispatcherType.REQUEST;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CountDownLatch;
+import javax.servlet.*;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.servlet.FilterRegistration;
+import org.glassfish.grizzly.servlet.ServletRegistration;
+import org.glassfish.grizzly.servlet.WebappContext;
+import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
+
+/**
+ * Grizzly backend. Requests are handled by the {@link MatcherFilter} deployed in a servlet
+ * context (as in the Jetty and Undertow backends).
+ */
+final class GrizzlyServer implements Backend {
+    /** Grizzly only runs the filters of requests mapped to a servlet. */
+    private static final class NotFoundServlet extends HttpServlet {
+        @Override protected void service (HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+
+            response.sendError (404);
+        }
+    }
+
+    /** Serves static files before routing (Grizzly handlers can not be chained). */
+    private static final class StaticFilesFilter implements Filter {
+        private final StaticFiles staticFiles;
+
+        StaticFilesFilter (StaticFiles staticFiles) {
+            this.staticFiles = staticFiles;
+        }
+
+        @Override public void doFilter (
+            ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+            final Exchange exchange = new ServletExchange (
+                (HttpServletRequest)request, (HttpServletResponse)response);
+
+            if (!staticFiles.serve (exchange))
+                chain.doFilter (request, response);
+        }
+
+        @Override public void init (FilterConfig filterConfig) {}
+        @Override public void destroy () {}
+    }
+
+    private final MatcherFilter filter;
+    /** Grizzly threads are daemons: the starting thread waits for the shut down (as Jetty's). */
+    private final CountDownLatch stopped = new CountDownLatch (1);
+    private HttpServer server;
+    private WebappContext context;
+
+    GrizzlyServer (MatcherFilter aFilter) {
+        filter = aFilter;
+    }
+
+    @Override public void startUp (
+        String host, int port,
+        String keystoreFile, String keystorePassword,
+        String truststoreFile, String truststorePassword,
+        String staticFilesFolder, String externalFilesFolder) {
+
+        final NetworkListener listener = new NetworkListener ("sabina", host, port);
+        if (keystoreFile != null) {
+            listener.setSecure (true);
+            listener.setSSLEngineConfig (new SSLEngineConfigurator (
+                SslContexts.create (
+                    keystoreFile, keystorePassword, truststoreFile, truststorePassword),
+                false, false, false));
+        }
+
+        server = new HttpServer ();
+        server.addListener (listener);
+        // TRACE requests are routed as any other method (instead of answered by Grizzly)
+        server.getServerConfiguration ().setPassTraceRequest (true);
+
+        context = new WebappContext ("sabina", "");
+        if (staticFilesFolder != null || externalFilesFolder != null) {
+            final FilterRegistration files = context.addFilter ("files",
+                new StaticFilesFilter (new StaticFiles (staticFilesFolder, externalFilesFolder)));
+            files.addMappingForUrlPatterns (of (REQUEST), "/*");
+            files.setAsyncSupported (true);
+        }
+
+        // Routes returning a CompletionStage suspend the request
+        final FilterRegistration router = context.addFilter ("router", filter);
+        router.addMappingForUrlPatterns (of (REQUEST), "/*");
+        router.setAsyncSupported (true);
+
+        final ServletRegistration servlet = context.addServlet ("default", new NotFoundServlet ());
+        servlet.addMapping ("/*");
+        servlet.setAsyncSupported (true);
+
+        context.deploy (server);
+
+        try {
+            server.start ();
+            stopped.await ();
+        }
+        // Wrap checked exception
+        catch (IOException e) {
+            throw new UncheckedIOException (e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+        }
+    }
+
+    @Override public void shutDown () {
+        if (server != null) {
+            context.undeploy ();
+            context = null;
+            server.shutdownNow ();
+            server = null;
+            stopped.countDown ();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import java.util.concurrent.Executor;
+
+import sabina.route.RouteMatcher;
+
+/**
+ * Provider of the Jetty backend ({@link JettyServer}).
+ */
+public final class JettyProvider implements BackendProvider {
+    @Override public String name () { return "jetty"; }
+
+    @Override public Backend create (
+        RouteMatcher matcher, boolean multipleHandlers, Executor executor) {
+
+        return new JettyServer (
+            new MatcherFilter (matcher, "jetty", multipleHandlers, executor));
+    }
+}
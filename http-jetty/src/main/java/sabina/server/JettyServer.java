@@ -42,7 +42,7 @@ import org.eclipse.jetty.util.ssl.SslContextFactory;
  * @author Per Wendel
  */
 final class JettyHandler extends SessionHandler {
-    private MatcherFilter filter;
+    private final MatcherFilter filter;
 
     public JettyHandler (MatcherFilter filter) {
         this.filter = filter;
@@ -55,8 +55,7 @@ final class JettyHandler extends SessionHandler {
         HttpServletResponse response)
         throws IOException, ServletException {
 
-        filter.doFilter (request, response, null);
-        baseRequest.setHandled (filter.handled);
+        baseRequest.setHandled (filter.handle (request, response));
     }
 }
 
@@ -0,0 +1,433 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static io.netty.channel.ChannelFutureListener.CLOSE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.*;
+import static io.netty.handler.codec.http.HttpHeaders.Values.KEEP_ALIVE;
+import static io.netty.handler.codec.http.HttpHeaders.isKeepAlive;
+import static io.netty.handler.codec.http.HttpResponseStatus.FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_0;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedNioStream;
+import io.netty.handler.stream.ChunkedStream;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Exchange of the Netty backend. The request is aggregated (its body is in memory) and the
+ * response body is written to a pooled buffer, which is sent with the status and headers
+ * when the exchange ends.
+ *
+ * <p>Streams, channels and files are not buffered (their size may be unknown or too big): they
+ * are sent in chunks as the connection accepts them (by a ChunkedWriteHandler). Files are sent
+ * with 'sendfile' on plain connections.
+ *
+ * <p>Query parameters are taken from the query string only (form bodies are not parsed).
+ */
+final class NettyExchange implements Exchange {
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final ChannelHandlerContext context;
+    private final FullHttpRequest request;
+    private final MemorySessions sessions;
+    private final boolean secure;
+    private final int queryStart;
+
+    private final HttpHeaders responseHeaders = new DefaultHttpHeaders ();
+    private final AtomicBoolean finished = new AtomicBoolean ();
+    private HttpResponseStatus status = OK;
+    private ByteBuf body;
+    /** Body sent in chunks (a ChunkedInput or a FileRegion) instead of the buffer. */
+    private Object chunks;
+    /** Length of the chunked body (-1 if it is not known). */
+    private long chunksLength;
+    private QueryStringDecoder query;
+    private Map<String, String> cookies;
+    private Map<String, Object> attributes;
+    private ExchangeSession session;
+    private volatile boolean suspended;
+
+    /** Completed when the response is written (the next pipelined request can be handled). */
+    final CompletableFuture<Void> done = new CompletableFuture<> ();
+
+    NettyExchange (
+        ChannelHandlerContext context, FullHttpRequest request, MemorySessions sessions,
+        boolean secure) {
+
+        this.context = context;
+        this.request = request;
+        this.sessions = sessions;
+        this.secure = secure;
+        this.queryStart = request.getUri ().indexOf ('?');
+    }
+
+    @Override public String method () { return request.getMethod ().name (); }
+    @Override public String scheme () { return secure? "https" : "http"; }
+    @Override public String protocol () { return request.getProtocolVersion ().text (); }
+
+    @Override public String host () {
+        final String host = request.headers ().get (HOST);
+        if (host == null)
+            return ((InetSocketAddress)context.channel ().localAddress ()).getHostString ();
+
+        final int colon = host.lastIndexOf (':');
+        return colon == -1 || host.endsWith ("]")? host : host.substring (0, colon);
+    }
+
+    @Override public int port () {
+        return ((InetSocketAddress)context.channel ().localAddress ()).getPort ();
+    }
+
+    @Override public String ip () {
+        final InetSocketAddress address = (InetSocketAddress)context.channel ().remoteAddress ();
+        return address.getAddress ().getHostAddress ();
+    }
+
+    @Override public String uri () {
+        final String uri = request.getUri ();
+        return queryStart == -1? uri : uri.substring (0, queryStart);
+    }
+
+    @Override public String url () {
+        return scheme () + "://" + host () + ":" + port () + uri ();
+    }
+
+    @Override public String pathInfo () { return uri (); }
+    @Override public String servletPath () { return ""; }
+    @Override public String contextPath () { return ""; }
+
+    @Override public String queryString () {
+        return queryStart == -1? null : request.getUri ().substring (queryStart + 1);
+    }
+
+    @Override public String queryParam (String name) {
+        final List<String> values = query ().parameters ().get (name);
+        return values == null || values.isEmpty ()? null : values.get (0);
+    }
+
+    @Override public Set<String> queryParams () {
+        return query ().parameters ().keySet ();
+    }
+
+    @Override public String header (String name) { return request.headers ().get (name); }
+    @Override public Collection<String> headerNames () { return request.headers ().names (); }
+
+    @Override public Map<String, String> cookies () {
+        if (cookies == null) {
+            cookies = new HashMap<> ();
+            for (String header : request.headers ().getAll (COOKIE))
+                for (Cookie cookie : CookieDecoder.decode (header))
+                    cookies.put (cookie.getName (), cookie.getValue ());
+        }
+        return cookies;
+    }
+
+    @Override public String contentType () { return request.headers ().get (CONTENT_TYPE); }
+    @Override public long contentLength () { return request.content ().readableBytes (); }
+
+    @Override public InputStream input () {
+        return new ByteBufInputStream (request.content ());
+    }
+
+    @Override public Object attribute (String name) {
+        return attributes == null? null : attributes.get (name);
+    }
+
+    @Override public void attribute (String name, Object value) {
+        if (attributes == null)
+            attributes = new HashMap<> ();
+        attributes.put (name, value);
+    }
+
+    @Override public Set<String> attributeNames () {
+        return attributes == null? new HashSet<> () : new HashSet<> (attributes.keySet ());
+    }
+
+    @Override public ExchangeSession session (boolean create) {
+        if (session == null)
+            session = sessions.get (cookies ().get (MemorySessions.COOKIE));
+
+        if (session == null && create) {
+            session = sessions.create ();
+            addCookie ("/", MemorySessions.COOKIE, session.id (), -1, secure);
+        }
+
+        return session;
+    }
+
+    @Override public void status (int status) {
+        this.status = HttpResponseStatus.valueOf (status);
+    }
+
+    @Override public String responseType () { return responseHeaders.get (CONTENT_TYPE); }
+
+    @Override public void responseType (String type) {
+        responseHeaders.set (CONTENT_TYPE, type);
+    }
+
+    @Override public void responseLength (long length) {
+        responseHeaders.set (CONTENT_LENGTH, length);
+    }
+
+    @Override public void addHeader (String name, String value) {
+        responseHeaders.add (name, value);
+    }
+
+    @Override public void setHeader (String name, String value) {
+        responseHeaders.set (name, value);
+    }
+
+    @Override public void addDateHeader (String name, long date) {
+        responseHeaders.add (name, new Date (date));
+    }
+
+    @Override public void addCookie (
+        String path, String name, String value, int maxAge, boolean secure) {
+
+        final Cookie cookie = new DefaultCookie (name, value);
+        cookie.setSecure (secure);
+        if (path != null && !path.isEmpty ())
+            cookie.setPath (path);
+        if (maxAge >= 0)
+            cookie.setMaxAge (maxAge);
+        responseHeaders.add (SET_COOKIE, ServerCookieEncoder.encode (cookie));
+    }
+
+    @Override public void redirect (String location) {
+        status = FOUND;
+        responseHeaders.set (LOCATION, location);
+    }
+
+    @Override public void sendError (int status) {
+        status (status);
+    }
+
+    @Override public boolean isCommitted () { return finished.get (); }
+
+    @Override public OutputStream output () {
+        return new ByteBufOutputStream (body ());
+    }
+
+    /**
+     * Buffers are copied to the (pooled) response buffer without intermediate arrays.
+     */
+    @Override public WritableByteChannel outputChannel () {
+        final ByteBuf buffer = body ();
+        return new WritableByteChannel () {
+            @Override public int write (ByteBuffer source) {
+                final int length = source.remaining ();
+                buffer.writeBytes (source);
+                return length;
+            }
+
+            @Override public boolean isOpen () { return true; }
+            @Override public void close () {}
+        };
+    }
+
+    /**
+     * Shared buffers are wrapped (not copied) if nothing was written to the response buffer.
+     */
+    @Override public boolean writeShared (ByteBuffer shared) {
+        if (body != null)
+            return false;
+
+        body = Unpooled.wrappedBuffer (shared);
+        return true;
+    }
+
+    /**
+     * Takes the body if nothing was written to the buffer. Chunks are read from the event loop
+     * when the connection is writable (so streams should not block for long).
+     */
+    @Override public boolean transfer (Closeable source) throws IOException {
+        if (body != null)
+            return false;
+
+        if (source instanceof FileChannel) {
+            final FileChannel file = (FileChannel)source;
+            final long position = file.position ();
+            chunksLength = file.size () - position;
+            chunks = secure?
+                new HttpChunkedInput (new ChunkedNioFile (file, position, chunksLength, CHUNK_SIZE))
+                : new DefaultFileRegion (file, position, chunksLength);
+        }
+        else {
+            chunksLength = -1;
+            chunks = new HttpChunkedInput (source instanceof InputStream?
+                new ChunkedStream ((InputStream)source, CHUNK_SIZE)
+                : new ChunkedNioStream ((ReadableByteChannel)source, CHUNK_SIZE));
+        }
+        return true;
+    }
+
+    /**
+     * The response is sent when the suspended exchange is completed.
+     */
+    @Override public boolean suspend () {
+        suspended = true;
+        return true;
+    }
+
+    @Override public void complete () {
+        finish ();
+    }
+
+    /**
+     * Called when the handling thread returns: sends the response unless the exchange was
+     * suspended.
+     */
+    void end () {
+        if (!suspended)
+            finish ();
+    }
+
+    private QueryStringDecoder query () {
+        if (query == null)
+            query = new QueryStringDecoder (request.getUri ());
+        return query;
+    }
+
+    private ByteBuf body () {
+        if (body == null)
+            body = context.alloc ().buffer ();
+        return body;
+    }
+
+    private void finish () {
+        if (!finished.compareAndSet (false, true))
+            return;
+
+        if (chunks != null) {
+            finishChunks ();
+            return;
+        }
+
+        final ByteBuf content = body == null? Unpooled.EMPTY_BUFFER : body;
+        final int length = content.readableBytes ();
+
+        // HEAD responses have the length of the body, but not the body
+        final boolean head = request.getMethod () == HttpMethod.HEAD;
+        if (head)
+            content.release ();
+
+        final FullHttpResponse response = new DefaultFullHttpResponse (
+            request.getProtocolVersion (), status, head? Unpooled.EMPTY_BUFFER : content);
+
+        final HttpHeaders headers = response.headers ();
+        headers.set (responseHeaders);
+        headers.set (CONTENT_LENGTH, length);
+
+        final boolean keepAlive = connection (headers, isKeepAlive (request));
+
+        request.release ();
+        final ChannelFuture written = context.writeAndFlush (response);
+        if (!keepAlive)
+            written.addListener (CLOSE);
+
+        done.complete (null);
+    }
+
+    /**
+     * Sends the status and headers, and then the chunks. The next request of the connection is
+     * not handled until they are written (so its response is not buffered meanwhile).
+     */
+    private void finishChunks () {
+        final HttpVersion version = request.getProtocolVersion ();
+        final HttpResponse response = new DefaultHttpResponse (version, status);
+        final HttpHeaders headers = response.headers ();
+        headers.set (responseHeaders);
+
+        // Without a length, the end of HTTP/1.0 bodies is told by closing the connection
+        final boolean head = request.getMethod () == HttpMethod.HEAD;
+        final boolean unknownLength = chunksLength < 0 && !headers.contains (CONTENT_LENGTH);
+        boolean keepAlive = isKeepAlive (request);
+        if (chunksLength >= 0)
+            headers.set (CONTENT_LENGTH, chunksLength);
+        else if (unknownLength && version == HTTP_1_0)
+            keepAlive = false;
+        else if (unknownLength && !head)
+            headers.set (TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+
+        keepAlive = connection (headers, keepAlive);
+        request.release ();
+        context.write (response);
+
+        final ChannelFuture written;
+        if (head) {
+            close (chunks);
+            written = context.writeAndFlush (LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        else if (chunks instanceof FileRegion) {
+            context.write (chunks);
+            written = context.writeAndFlush (LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        else {
+            written = context.writeAndFlush (chunks);
+        }
+
+        if (!keepAlive)
+            written.addListener (CLOSE);
+        written.addListener (it -> done.complete (null));
+    }
+
+    /** @return True if the connection is kept alive (after setting its header if needed). */
+    private boolean connection (HttpHeaders headers, boolean keepAlive) {
+        if (keepAlive && request.getProtocolVersion () == HTTP_1_0)
+            headers.set (CONNECTION, KEEP_ALIVE);
+        else if (!keepAlive)
+            headers.set (CONNECTION, HttpHeaders.Values.CLOSE);
+        return keepAlive;
+    }
+
+    private static void close (Object chunks) {
+        if (chunks instanceof ChunkedInput) {
+            try {
+                ((ChunkedInput<?>)chunks).close ();
+            }
+            catch (Exception e) {
+                // The body was not going to be read anyway
+            }
+        }
+        else {
+            ReferenceCountUtil.release (chunks);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Logger.getLogger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.internal.PlatformDependent;
+import sabina.util.Threads;
+
+/**
+ * Netty backend. Requests are read by event loops (epoll on Linux, NIO elsewhere) with
+ * pooled direct buffers. Routes with non blocking handlers (see
+ * {@link sabina.Route#blocking}) are handled in the event loop, the rest are offloaded to an
+ * executor. By default it is a bounded pool (see {@link Threads#boundedThreads(String)}),
+ * when it is full, requests are answered with 503 (Service Unavailable).
+ *
+ * <p>Connections are kept alive and pipelined requests are answered in order (a request of a
+ * connection is not handled until the previous response is written).
+ */
+final class NettyServer implements Backend {
+    private static final Logger LOG = getLogger (NettyServer.class.getName ());
+
+    /** Maximum size of request bodies (they are aggregated in memory). */
+    private static final int MAX_CONTENT_LENGTH = 10 * 1024 * 1024;
+
+    /** Handles the requests of one connection. */
+    private final class RequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        private final boolean secure;
+        /** Completed when the last request of the connection is answered. */
+        private CompletableFuture<Void> last = completedFuture (null);
+
+        RequestHandler (boolean secure) {
+            super (false); // Requests are released when answered
+            this.secure = secure;
+        }
+
+        @Override protected void channelRead0 (
+            ChannelHandlerContext context, FullHttpRequest request) {
+
+            final NettyExchange exchange =
+                new NettyExchange (context, request, sessions, secure);
+            // Requests are matched once, here (before choosing the thread handling them)
+            final boolean file = staticFiles != null && staticFiles.accepts (exchange.uri ());
+            final Dispatcher.Target target = file? null : dispatcher.target (exchange);
+            final boolean blocking = file || dispatcher.isBlocking (target);
+
+            if (!blocking && last.isDone ()) {
+                handle (exchange, target);
+                last = exchange.done;
+            }
+            else {
+                final Executor handler =
+                    blocking? offload (exchange, context) : context.executor ();
+                last = last.thenComposeAsync (it -> {
+                    handle (exchange, target);
+                    return exchange.done;
+                }, handler);
+            }
+        }
+
+        @Override public void exceptionCaught (ChannelHandlerContext context, Throwable e) {
+            LOG.warning ("Closing connection: " + e.getMessage ());
+            context.close ();
+        }
+    }
+
+    private final Dispatcher dispatcher;
+    private final MemorySessions sessions = new MemorySessions ();
+    private final Executor handlerExecutor;
+
+    private Executor executor;
+    private StaticFiles staticFiles;
+    private EventLoopGroup acceptors;
+    private EventLoopGroup workers;
+    private Channel channel;
+
+    /**
+     * @param aDispatcher Dispatcher of the requests.
+     * @param anExecutor Executor for blocking handlers (null to use a bounded pool).
+     */
+    NettyServer (Dispatcher aDispatcher, Executor anExecutor) {
+        dispatcher = aDispatcher;
+        handlerExecutor = anExecutor;
+    }
+
+    @Override public void startUp (
+        String host, int port,
+        String keystoreFile, String keystorePassword,
+        String truststoreFile, String truststorePassword,
+        String staticFilesFolder, String externalFilesFolder) {
+
+        final SSLContext sslContext = keystoreFile == null? null :
+            SslContexts.create (
+                keystoreFile, keystorePassword, truststoreFile, truststorePassword);
+
+        if (staticFilesFolder != null || externalFilesFolder != null)
+            staticFiles = new StaticFiles (staticFilesFolder, externalFilesFolder);
+
+        executor = handlerExecutor != null?
+            handlerExecutor : Threads.boundedThreads ("sabina-netty");
+
+        // The native transport allocates memory with Unsafe (not accessible in some JVMs)
+        final boolean epoll = Epoll.isAvailable () && PlatformDependent.hasUnsafe ();
+        acceptors = epoll? new EpollEventLoopGroup (1) : new NioEventLoopGroup (1);
+        workers = epoll? new EpollEventLoopGroup () : new NioEventLoopGroup ();
+
+        final ServerBootstrap bootstrap = new ServerBootstrap ()
+            .group (acceptors, workers)
+            .channel (epoll? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+            .option (ChannelOption.SO_BACKLOG, 1024)
+            .option (ChannelOption.SO_REUSEADDR, true)
+            .childOption (ChannelOption.ALLOCATOR, new PooledByteBufAllocator (true))
+            .childOption (ChannelOption.TCP_NODELAY, true)
+            .childOption (ChannelOption.SO_KEEPALIVE, true)
+            .childHandler (new ChannelInitializer<SocketChannel> () {
+                @Override protected void initChannel (SocketChannel channel) {
+                    final ChannelPipeline pipeline = channel.pipeline ();
+                    if (sslContext != null) {
+                        final SSLEngine engine = sslContext.createSSLEngine ();
+                        engine.setUseClientMode (false);
+                        pipeline.addLast (new SslHandler (engine));
+                    }
+                    pipeline.addLast (new HttpServerCodec ());
+                    pipeline.addLast (new HttpObjectAggregator (MAX_CONTENT_LENGTH));
+                    pipeline.addLast (new ChunkedWriteHandler ());
+                    pipeline.addLast (new RequestHandler (sslContext != null));
+                }
+            });
+
+        try {
+            channel = bootstrap.bind (host, port).sync ().channel ();
+        }
+        // Wrap checked exception
+        catch (InterruptedException e) {
+            Thread.currentThread ().interrupt ();
+            throw new RuntimeException (e);
+        }
+    }
+
+    @Override public void shutDown () {
+        if (channel != null) {
+            channel.close ().syncUninterruptibly ();
+            channel = null;
+            acceptors.shutdownGracefully (0, 5, SECONDS).syncUninterruptibly ();
+            workers.shutdownGracefully (0, 5, SECONDS).syncUninterruptibly ();
+            if (handlerExecutor == null)
+                ((ExecutorService)executor).shutdown ();
+            sessions.clear ();
+        }
+    }
+
+    /**
+     * @param target The routes matching the request (null if they are not matched yet).
+     */
+    private void handle (NettyExchange exchange, Dispatcher.Target target) {
+        if (exchange.isCommitted ())
+            return; // Rejected by the executor
+
+        try {
+            if (staticFiles == null || !staticFiles.serve (exchange))
+                dispatcher.dispatch (exchange, target);
+        }
+        catch (Exception e) {
+            LOG.severe (e.getMessage ());
+            exchange.status (500);
+        }
+        finally {
+            exchange.end ();
+        }
+    }
+
+    /**
+     * Runs the handling of a request in the executor. If the executor rejects it, the request
+     * is answered with 503 and the task is run in the event loop (it completes the request
+     * without handling it, so the next request of the connection is not stalled).
+     */
+    private Executor offload (NettyExchange exchange, ChannelHandlerContext context) {
+        return task -> {
+            try {
+                executor.execute (task);
+            }
+            catch (RejectedExecutionException e) {
+                exchange.status (503);
+                exchange.complete ();
+                context.executor ().execute (task);
+            }
+        };
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static io.undertow.util.Headers.CONTENT_LENGTH;
+import static io.undertow.util.Headers.CONTENT_TYPE;
+import static io.undertow.util.Headers.LOCATION;
+import static io.undertow.util.StatusCodes.FOUND;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.undertow.io.BufferWritableOutputStream;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.Cookie;
+import io.undertow.server.handlers.CookieImpl;
+import io.undertow.server.session.SessionConfig;
+import io.undertow.server.session.SessionManager;
+import io.undertow.util.DateUtils;
+import io.undertow.util.HttpString;
+import io.undertow.util.SameThreadExecutor;
+
+/**
+ * Exchange of the native Undertow backend (on top of an {@link HttpServerExchange} without
+ * the servlet layer). The exchange must be in blocking mode.
+ *
+ * <p>Query parameters are taken from the query string only (form bodies are not parsed).
+ */
+final class UndertowExchange implements Exchange {
+    /** Set when the handler thread returns (after suspending the exchange). */
+    private static final int RETURNED = 1;
+    /** Set when the suspended exchange is completed. */
+    private static final int COMPLETED = 2;
+
+    private final class Session implements ExchangeSession {
+        private final io.undertow.server.session.Session session;
+        private final boolean created;
+
+        Session (io.undertow.server.session.Session session, boolean created) {
+            this.session = session;
+            this.created = created;
+        }
+
+        @Override public String id () { return session.getId (); }
+        @Override public Object attribute (String name) { return session.getAttribute (name); }
+        @Override public void removeAttribute (String name) { session.removeAttribute (name); }
+        @Override public Set<String> attributeNames () { return session.getAttributeNames (); }
+        @Override public long creationTime () { return session.getCreationTime (); }
+        @Override public long lastAccessedTime () { return session.getLastAccessedTime (); }
+        @Override public int maxInactiveInterval () { return session.getMaxInactiveInterval (); }
+        @Override public void invalidate () { session.invalidate (exchange); }
+        @Override public boolean isNew () { return created; }
+
+        @Override public void attribute (String name, Object value) {
+            session.setAttribute (name, value);
+        }
+
+        @Override public void maxInactiveInterval (int interval) {
+            session.setMaxInactiveInterval (interval);
+        }
+    }
+
+    private final HttpServerExchange exchange;
+    private final AtomicInteger state = new AtomicInteger ();
+    private Map<String, Object> attributes;
+
+    UndertowExchange (HttpServerExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    @Override public String method () { return exchange.getRequestMethod ().toString (); }
+    @Override public String scheme () { return exchange.getRequestScheme (); }
+    @Override public String host () { return exchange.getHostName (); }
+    @Override public int port () { return exchange.getHostPort (); }
+    @Override public String protocol () { return exchange.getProtocol ().toString (); }
+
+    @Override public String ip () {
+        return exchange.getSourceAddress ().getAddress ().getHostAddress ();
+    }
+
+    @Override public String uri () { return exchange.getRequestURI (); }
+    @Override public String url () { return exchange.getRequestURL (); }
+    @Override public String pathInfo () { return exchange.getRelativePath (); }
+    @Override public String servletPath () { return ""; }
+    @Override public String contextPath () { return ""; }
+
+    @Override public String queryString () {
+        final String query = exchange.getQueryString ();
+        return query.isEmpty ()? null : query;
+    }
+
+    @Override public String queryParam (String name) {
+        final Deque<String> values = exchange.getQueryParameters ().get (name);
+        return values == null? null : values.peekFirst ();
+    }
+
+    @Override public Set<String> queryParams () {
+        return exchange.getQueryParameters ().keySet ();
+    }
+
+    @Override public String header (String name) {
+        return exchange.getRequestHeaders ().getFirst (name);
+    }
+
+    @Override public Collection<String> headerNames () {
+        final List<String> names = new ArrayList<> ();
+        for (HttpString name : exchange.getRequestHeaders ().getHeaderNames ())
+            names.add (name.toString ());
+        return names;
+    }
+
+    @Override public Map<String, String> cookies () {
+        final Map<String, String> result = new HashMap<> ();
+        for (Cookie cookie : exchange.getRequestCookies ().values ())
+            result.put (cookie.getName (), cookie.getValue ());
+        return result;
+    }
+
+    @Override public String contentType () {
+        return exchange.getRequestHeaders ().getFirst (CONTENT_TYPE);
+    }
+
+    @Override public long contentLength () { return exchange.getRequestContentLength (); }
+    @Override public InputStream input () { return exchange.getInputStream (); }
+
+    @Override public Object attribute (String name) {
+        return attributes == null? null : attributes.get (name);
+    }
+
+    @Override public void attribute (String name, Object value) {
+        if (attributes == null)
+            attributes = new HashMap<> ();
+        attributes.put (name, value);
+    }
+
+    @Override public Set<String> attributeNames () {
+        return attributes == null? new HashSet<> () : new HashSet<> (attributes.keySet ());
+    }
+
+    @Override public ExchangeSession session (boolean create) {
+        final SessionManager manager = exchange.getAttachment (SessionManager.ATTACHMENT_KEY);
+        final SessionConfig config = exchange.getAttachment (SessionConfig.ATTACHMENT_KEY);
+        if (manager == null || config == null)
+            throw new IllegalStateException ("Sessions are not enabled");
+
+        final io.undertow.server.session.Session session = manager.getSession (exchange, config);
+        if (session != null)
+            return new Session (session, false);
+
+        return create? new Session (manager.createSession (exchange, config), true) : null;
+    }
+
+    @Override public void status (int status) { exchange.setResponseCode (status); }
+
+    @Override public String responseType () {
+        return exchange.getResponseHeaders ().getFirst (CONTENT_TYPE);
+    }
+
+    @Override public void responseType (String type) {
+        exchange.getResponseHeaders ().put (CONTENT_TYPE, type);
+    }
+
+    @Override public void responseLength (long length) {
+        exchange.getResponseHeaders ().put (CONTENT_LENGTH, length);
+    }
+
+    @Override public void addHeader (String name, String value) {
+        exchange.getResponseHeaders ().add (new HttpString (name), value);
+    }
+
+    @Override public void setHeader (String name, String value) {
+        exchange.getResponseHeaders ().put (new HttpString (name), value);
+    }
+
+    @Override public void addDateHeader (String name, long date) {
+        addHeader (name, DateUtils.toDateString (new Date (date)));
+    }
+
+    @Override public void addCookie (
+        String path, String name, String value, int maxAge, boolean secure) {
+
+        final Cookie cookie = new CookieImpl (name, value).setSecure (secure);
+        if (path != null && !path.isEmpty ())
+            cookie.setPath (path);
+        if (maxAge >= 0)
+            cookie.setMaxAge (maxAge);
+        exchange.getResponseCookies ().put (name, cookie);
+    }
+
+    @Override public void redirect (String location) {
+        exchange.setResponseCode (FOUND);
+        exchange.getResponseHeaders ().put (LOCATION, location);
+    }
+
+    @Override public void sendError (int status) {
+        exchange.setResponseCode (status);
+    }
+
+    @Override public boolean isCommitted () { return exchange.isResponseStarted (); }
+    @Override public OutputStream output () { return exchange.getOutputStream (); }
+
+    /**
+     * Buffers are written to the connection without copying them to arrays.
+     */
+    @Override public WritableByteChannel outputChannel () throws IOException {
+        final OutputStream output = exchange.getOutputStream ();
+        if (!(output instanceof BufferWritableOutputStream))
+            return Exchange.super.outputChannel ();
+
+        final BufferWritableOutputStream out = (BufferWritableOutputStream)output;
+        return new WritableByteChannel () {
+            @Override public int write (ByteBuffer source) throws IOException {
+                final int length = source.remaining ();
+                out.write (source);
+                source.position (source.limit ());
+                return length;
+            }
+
+            @Override public boolean isOpen () { return true; }
+            @Override public void close () {}
+        };
+    }
+
+    /**
+     * Shared buffers are written to the connection as they are.
+     */
+    @Override public boolean writeShared (ByteBuffer shared) throws IOException {
+        final OutputStream output = exchange.getOutputStream ();
+        if (!(output instanceof BufferWritableOutputStream))
+            return false;
+
+        ((BufferWritableOutputStream)output).write (shared);
+        return true;
+    }
+
+    /**
+     * The exchange is ended when the handler thread has returned and the exchange has been
+     * completed (in any order).
+     */
+    @Override public boolean suspend () {
+        exchange.dispatch (SameThreadExecutor.INSTANCE, () -> finish (RETURNED));
+        return true;
+    }
+
+    @Override public void complete () {
+        finish (COMPLETED);
+    }
+
+    private void finish (int step) {
+        if ((state.getAndUpdate (it -> it | step) | step) == (RETURNED | COMPLETED))
+            exchange.endExchange ();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import java.util.concurrent.Executor;
+
+import sabina.route.RouteMatcher;
+
+/**
+ * Provider of the Undertow backend without servlets ({@link UndertowNativeServer}).
+ */
+public final class UndertowNativeProvider implements BackendProvider {
+    @Override public String name () { return "undertow-native"; }
+
+    @Override public Backend create (
+        RouteMatcher matcher, boolean multipleHandlers, Executor executor) {
+
+        // Static files are served before routing: there are no other handlers
+        return new UndertowNativeServer (
+            new Dispatcher (matcher, "undertow-native", false, executor));
+    }
+}
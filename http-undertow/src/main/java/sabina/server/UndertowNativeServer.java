@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static sabina.server.UndertowServer.server;
+import static sabina.server.UndertowServer.staticFiles;
+
+import io.undertow.Undertow;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.session.InMemorySessionManager;
+import io.undertow.server.session.SessionAttachmentHandler;
+import io.undertow.server.session.SessionCookieConfig;
+
+/**
+ * Undertow backend without the servlet container: requests are routed directly on the
+ * {@link HttpServerExchange} (see {@link UndertowExchange}).
+ */
+final class UndertowNativeServer implements Backend {
+    private final Dispatcher dispatcher;
+    private Undertow server;
+    private InMemorySessionManager sessionManager;
+
+    UndertowNativeServer (Dispatcher aDispatcher) {
+        dispatcher = aDispatcher;
+    }
+
+    @Override public void startUp (
+        String host, int port,
+        String keystoreFile, String keystorePassword,
+        String truststoreFile, String truststorePassword,
+        String staticFilesFolder, String externalFilesFolder) {
+
+        sessionManager = new InMemorySessionManager ("sabina");
+        sessionManager.start ();
+
+        HttpHandler handler = new SessionAttachmentHandler (
+            this::handle, sessionManager, new SessionCookieConfig ());
+
+        if (staticFilesFolder != null || externalFilesFolder != null)
+            handler = staticFiles (staticFilesFolder, externalFilesFolder, handler);
+
+        server = (keystoreFile == null)?
+            server (port, host, handler) :
+            server (port, host, handler,
+                SslContexts.create (
+                    keystoreFile, keystorePassword, truststoreFile, truststorePassword));
+
+        server.start ();
+    }
+
+    @Override public void shutDown () {
+        if (server != null) {
+            server.stop ();
+            server = null;
+            sessionManager.stop ();
+            sessionManager = null;
+        }
+    }
+
+    /**
+     * Handlers may block, so requests are moved from the IO threads to the worker pool.
+     */
+    private void handle (HttpServerExchange exchange) throws Exception {
+        if (exchange.isInIoThread ()) {
+            exchange.dispatch (this::handle);
+            return;
+        }
+
+        exchange.startBlocking ();
+        dispatcher.dispatch (new UndertowExchange (exchange));
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import java.util.concurrent.Executor;
+
+import sabina.route.RouteMatcher;
+
+/**
+ * Provider of the Undertow backend ({@link UndertowServer}).
+ */
+public final class UndertowProvider implements BackendProvider {
+    @Override public String name () { return "undertow"; }
+
+    @Override public Backend create (
+        RouteMatcher matcher, boolean multipleHandlers, Executor executor) {
+
+        return new UndertowServer (
+            new MatcherFilter (matcher, "undertow", multipleHandlers, executor));
+    }
+}
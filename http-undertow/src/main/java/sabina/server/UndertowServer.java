@@ -21,17 +21,14 @@ import static io.undertow.servlet.Servlets.defaultContainer;
 import static io.undertow.servlet.Servlets.deployment;
 import static java.lang.ClassLoader.getSystemClassLoader;
 import static java.lang.System.exit;
-import static java.lang.System.setProperty;
 import static javax.servlet.DispatcherType.REQUEST;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.net.ssl.SSLContext;
-import javax.servlet.Filter;
 import javax.servlet.ServletException;
 
 import io.undertow.Undertow;
@@ -40,36 +37,7 @@ import io.undertow.server.handlers.resource.*;
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.FilterInfo;
-import io.undertow.servlet.api.InstanceFactory;
-import io.undertow.servlet.api.InstanceHandle;
-
-final class MatcherFilterInfo extends FilterInfo implements Cloneable {
-    private final MatcherFilter matcherFilter;
-
-    public MatcherFilterInfo (final String name, final MatcherFilter aMatcher) {
-        super (name, aMatcher.getClass ());
-        matcherFilter = aMatcher;
-    }
-
-    @Override public FilterInfo clone () {
-        MatcherFilterInfo info = new MatcherFilterInfo (getName (), matcherFilter);
-        info.setAsyncSupported (isAsyncSupported ());
-        return info;
-    }
-
-    @Override public InstanceFactory<? extends Filter> getInstanceFactory () {
-        return (InstanceFactory<MatcherFilter>)() -> new InstanceHandle<MatcherFilter> () {
-            @Override public MatcherFilter getInstance () {
-                return new MatcherFilter (
-                    matcherFilter.routeMatcher,
-                    matcherFilter.backend,
-                    matcherFilter.hasOtherHandlers);
-            }
-
-            @Override public void release () {}
-        };
-    }
-}
+import io.undertow.servlet.util.ImmediateInstanceFactory;
 
 /**
  * TODO Change by version with two resourceManagers (better performance ?)
@@ -145,7 +113,7 @@ final class UndertowServer implements Backend {
             server = (keystoreFile == null)?
                 server (port, host, deploymentManager.start ()) :
                 server (port, host, deploymentManager.start (),
-                    createSecureSocketContext (
+                    SslContexts.create (
                         keystoreFile, keystorePassword, truststoreFile, truststorePassword));
 
             server.start ();
@@ -178,52 +146,53 @@ final class UndertowServer implements Backend {
             .setClassLoader (getSystemClassLoader ())
             .setDeploymentName ("")
             .setContextPath ("")
-            .addFilter (new MatcherFilterInfo ("router", filter))
+            .addFilter (router ())
             .addFilterUrlMapping ("router", "/*", REQUEST);
 
         if (aStaticFilesRoute != null || aExternalFilesLocation != null)
             deployment.addInnerHandlerChainWrapper (
-                handler -> predicate (suffixes (".jpg", ".png", ".css", ".html", ".js"),
-                    resource (new ChainResourceManager (aStaticFilesRoute, aExternalFilesLocation)),
-                    handler
-                )
+                handler -> staticFiles (aStaticFilesRoute, aExternalFilesLocation, handler)
             );
 
         return defaultContainer ().addDeployment (deployment);
     }
 
-    Undertow server (int aPort, String aHost, HttpHandler aHandler) {
+    /**
+     * The filter is stateless, so the same instance is used for all requests (and deployments).
+     * Routes returning a CompletionStage suspend the request.
+     */
+    private FilterInfo router () {
+        final ImmediateInstanceFactory<MatcherFilter> instance =
+            new ImmediateInstanceFactory<> (filter);
+        return new FilterInfo ("router", MatcherFilter.class, instance).setAsyncSupported (true);
+    }
+
+    /**
+     * Serves static files (by extension) from the class path and a folder. Other requests
+     * are passed to the handler.
+     */
+    static HttpHandler staticFiles (
+        String aStaticFilesRoute, String aExternalFilesLocation, HttpHandler aHandler) {
+
+        return predicate (suffixes (".jpg", ".png", ".css", ".html", ".js"),
+            resource (new ChainResourceManager (aStaticFilesRoute, aExternalFilesLocation)),
+            aHandler
+        );
+    }
+
+    static Undertow server (int aPort, String aHost, HttpHandler aHandler) {
         return Undertow.builder ()
             .addHttpListener (aPort, aHost)
             .setHandler (aHandler)
             .build ();
     }
 
-    Undertow server (int aPort, String aHost, HttpHandler aHandler, SSLContext aSSLContext) {
+    static Undertow server (
+        int aPort, String aHost, HttpHandler aHandler, SSLContext aSSLContext) {
+
         return Undertow.builder ()
             .addHttpsListener (aPort, aHost, aSSLContext)
             .setHandler (aHandler)
             .build ();
     }
-
-    private static SSLContext createSecureSocketContext (
-        String keystoreFile, String keystorePassword,
-        String truststoreFile, String truststorePassword) {
-
-        try {
-            if (keystoreFile != null)
-                setProperty ("javax.net.ssl.keyStore", keystoreFile);
-            if (keystorePassword != null)
-                setProperty ("javax.net.ssl.keyStorePassword", keystorePassword);
-            if (truststoreFile != null)
-                setProperty ("javax.net.ssl.trustStore", truststoreFile);
-            if (truststorePassword != null)
-                setProperty ("javax.net.ssl.trustStorePassword", truststorePassword);
-            return SSLContext.getDefault ();
-        }
-        catch (NoSuchAlgorithmException e) {
-            exit (-100);
-            return null; // TODO Review this behaviour
-        }
-    }
 }
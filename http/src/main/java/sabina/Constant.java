@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static sabina.util.Checks.checkArgument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import sabina.Route.Handler;
+
+/**
+ * Handler that always returns the same response. The body is encoded once (when the route
+ * is defined) and the server writes its bytes directly (the handler is not invoked).
+ *
+ * <p>Created with {@link Sabina#constant(String, String)}, ie:
+ * <code>get ("/plaintext", constant ("text/plain", "Hello, World!"))</code>.
+ */
+public final class Constant implements Handler {
+    public final String contentType;
+    /** The length of the body in bytes. */
+    public final int length;
+    private final byte[] body;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param contentType The content type of the response.
+     * @param body The response body (encoded in UTF-8).
+     */
+    public Constant (String contentType, String body) {
+        this (contentType, body.getBytes (UTF_8));
+    }
+
+    /**
+     * @param contentType The content type of the response.
+     * @param body The response body (it is copied).
+     */
+    public Constant (String contentType, byte[] body) {
+        checkArgument (contentType != null && body != null, "Content type and body required");
+
+        this.contentType = contentType;
+        this.body = body.clone ();
+        this.length = this.body.length;
+        final ByteBuffer direct = ByteBuffer.allocateDirect (length);
+        direct.put (this.body).flip ();
+        this.buffer = direct.asReadOnlyBuffer ();
+    }
+
+    /**
+     * Writes the body without copying it.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the body can not be written.
+     */
+    public void writeTo (OutputStream out) throws IOException {
+        out.write (body);
+    }
+
+    /**
+     * Buffer backends (undertow-native and netty) send it as it is (it is direct, so it is not
+     * copied to write it to sockets).
+     *
+     * @return A read only view of the body (for backends writing buffers).
+     */
+    public ByteBuffer buffer () {
+        return buffer.duplicate ();
+    }
+
+    /**
+     * Used if the handler is invoked directly (servers write the body without calling it).
+     */
+    @Override public Object apply (Request request) {
+        request.response.type (contentType);
+        return buffer ();
+    }
+}
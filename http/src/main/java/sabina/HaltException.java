@@ -15,19 +15,47 @@
 package sabina;
 
 import static sabina.util.Checks.checkArgument;
-import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 /**
- * Exception used for stopping the execution.
+ * Exception used for stopping the execution. It has no stack trace (it is control flow, not
+ * an error), and halts without body share their instances.
  *
  * @author Per Wendel
  */
 public final class HaltException extends RuntimeException {
     private static final long serialVersionUID = 1L;
+    private static final int SC_OK = 200;
+
+    /** Halts without body by status code (created when first used). */
+    private static final HaltException[] HALTS = new HaltException[600];
 
     public final int statusCode;
     public final String body;
 
+    /**
+     * @return A shared exception halting with status 200 and no body.
+     */
+    static HaltException of () {
+        return of (SC_OK);
+    }
+
+    /**
+     * @param statusCode The status of the response.
+     * @return A shared exception halting with the given status and no body.
+     */
+    static HaltException of (final int statusCode) {
+        if (statusCode < 100 || statusCode >= HALTS.length)
+            return new HaltException (statusCode, null);
+
+        // Instances are immutable, a race only creates an extra one
+        HaltException halt = HALTS[statusCode];
+        if (halt == null) {
+            halt = new HaltException (statusCode, null);
+            HALTS[statusCode] = halt;
+        }
+        return halt;
+    }
+
     HaltException () {
         this (SC_OK, null);
     }
@@ -41,6 +69,7 @@ public final class HaltException extends RuntimeException {
     }
 
     HaltException (final int statusCode, final String body) {
+        super (null, null, false, false);
         checkArgument (statusCode >= 100, "Invalid HTTP error code: " + statusCode);
         this.statusCode = statusCode;
         this.body = body;
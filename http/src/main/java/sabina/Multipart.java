@@ -0,0 +1,527 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.logging.Logger.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Parts of a 'multipart/form-data' request body (see {@link Request#multipart(long, long)}).
+ * The body is parsed while it is iterated, one part at a time (using a pooled read buffer).
+ * Parts up to 16 KB are copied to arrays of their size and bigger ones are written to temporary
+ * files, so the memory used does not depend on the size of the upload.
+ *
+ * <p>Parts bigger than the part limit (or more parts than allowed) halt the request with status
+ * 413 and malformed bodies with 400. Closing this instance closes all its parts (deleting their
+ * files). File names are sent by the client, do not use them as paths without checking them:
+ *
+ * <pre>
+ * try (Multipart parts = it.multipart (100_000_000, 1_000_000_000)) {
+ *     for (Multipart.Part part : parts)
+ *         if (part.fileName != null)
+ *             part.save (uploads.resolve (Paths.get (part.fileName).getFileName ()));
+ * }
+ * </pre>
+ */
+public final class Multipart implements Iterable<Multipart.Part>, Closeable {
+    private static final Logger LOG = getLogger (Multipart.class.getName ());
+
+    private static final int
+        SC_BAD_REQUEST = 400,
+        SC_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    /** Size of the pooled buffers (it is the biggest part kept in memory). */
+    static final int BUFFER_SIZE = 16 * 1024;
+    /** Default maximum number of parts of a body. */
+    static final int MAX_PARTS = 1000;
+    private static final int MAX_POOLED = 64;
+    /** Maximum size of the headers of a part. */
+    private static final int MAX_HEADERS = 8 * 1024;
+    private static final int MAX_BOUNDARY = 70;
+
+    private static final Queue<byte[]> BUFFERS = new ConcurrentLinkedQueue<> ();
+    private static final AtomicInteger POOLED = new AtomicInteger ();
+
+    static byte[] acquire () {
+        final byte[] buffer = BUFFERS.poll ();
+        if (buffer == null)
+            return new byte[BUFFER_SIZE];
+
+        POOLED.decrementAndGet ();
+        return buffer;
+    }
+
+    static void release (byte[] buffer) {
+        if (POOLED.incrementAndGet () <= MAX_POOLED)
+            BUFFERS.offer (buffer);
+        else
+            POOLED.decrementAndGet ();
+    }
+
+    static void delete (Path file) {
+        try {
+            Files.deleteIfExists (file);
+        }
+        catch (IOException e) {
+            LOG.warning ("Temporary file not deleted: " + file);
+        }
+    }
+
+    /**
+     * @param contentType The 'Content-Type' of the request.
+     * @return The boundary of a multipart content type.
+     */
+    static String boundary (String contentType) {
+        if (contentType == null || !contentType.regionMatches (true, 0, "multipart/", 0, 10))
+            throw HaltException.of (SC_UNSUPPORTED_MEDIA_TYPE);
+
+        final String boundary = parameter (contentType, "boundary");
+        if (boundary == null || boundary.isEmpty () || boundary.length () > MAX_BOUNDARY)
+            throw HaltException.of (SC_BAD_REQUEST);
+        return boundary;
+    }
+
+    /**
+     * @param header A header value with parameters (ie: 'form-data; name="field"').
+     * @param name The name of the parameter (case insensitive).
+     * @return The value of the parameter (unquoted) or null if it is not found.
+     */
+    static String parameter (String header, String name) {
+        int separator = header.indexOf (';');
+        while (separator != -1) {
+            final int equals = header.indexOf ('=', separator);
+            if (equals == -1)
+                return null;
+
+            final String key = header.substring (separator + 1, equals).trim ();
+            final String value;
+            if (equals + 1 < header.length () && header.charAt (equals + 1) == '"') {
+                int close = header.indexOf ('"', equals + 2);
+                close = close == -1? header.length () : close;
+                value = header.substring (equals + 2, close);
+                separator = header.indexOf (';', close);
+            }
+            else {
+                separator = header.indexOf (';', equals);
+                final int end = separator == -1? header.length () : separator;
+                value = header.substring (equals + 1, end).trim ();
+            }
+
+            if (key.equalsIgnoreCase (name))
+                return value;
+        }
+        return null;
+    }
+
+    /**
+     * A part of the body. Its content is kept in memory if it is small, or in a temporary file
+     * otherwise. Closing the part deletes the file.
+     */
+    public static final class Part implements Closeable {
+        public final String name;
+        /** Name of the uploaded file (null for fields). */
+        public final String fileName;
+        /** Content type of the part (null if it was not sent). */
+        public final String contentType;
+        /** Headers of the part (names are case insensitive). */
+        public final Map<String, String> headers;
+        /** Size of the content in bytes. */
+        public final long size;
+
+        private byte[] bytes;
+        private Path file;
+
+        Part (Map<String, String> headers, String name, String fileName, byte[] bytes) {
+            this (headers, name, fileName, bytes, bytes.length, null);
+        }
+
+        Part (
+            Map<String, String> headers, String name, String fileName, Path file, long size) {
+
+            this (headers, name, fileName, null, size, file);
+        }
+
+        private Part (
+            Map<String, String> headers, String name, String fileName, byte[] bytes, long size,
+            Path file) {
+
+            this.headers = headers;
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = headers.get ("Content-Type");
+            this.bytes = bytes;
+            this.size = size;
+            this.file = file;
+        }
+
+        /**
+         * @return True if the content was written to a temporary file.
+         */
+        public boolean isFile () {
+            return file != null;
+        }
+
+        /**
+         * @return A new stream with the content of the part.
+         * @throws UncheckedIOException If the temporary file can not be read.
+         */
+        public InputStream input () {
+            checkOpen ();
+            try {
+                return file == null?
+                    new ByteArrayInputStream (bytes) : Files.newInputStream (file);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException (e);
+            }
+        }
+
+        /**
+         * @return The content decoded with the charset of the part (UTF-8 if it has none).
+         * @throws UncheckedIOException If the temporary file can not be read.
+         */
+        public String string () {
+            checkOpen ();
+            try {
+                final byte[] content = file == null? bytes : Files.readAllBytes (file);
+                return new String (content, RequestBody.charset (contentType));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException (e);
+            }
+        }
+
+        /**
+         * Stores the content in a file. Temporary files are moved (not copied), after that, the
+         * part is closed.
+         *
+         * @param target The file to write (replaced if it exists).
+         * @throws UncheckedIOException If the file can not be written.
+         */
+        public void save (Path target) {
+            checkOpen ();
+            try {
+                if (file == null) {
+                    Files.write (target, bytes);
+                }
+                else {
+                    Files.move (file, target, REPLACE_EXISTING);
+                    file = null;
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException (e);
+            }
+            close ();
+        }
+
+        @Override public void close () {
+            bytes = null;
+            if (file != null) {
+                delete (file);
+                file = null;
+            }
+        }
+
+        private void checkOpen () {
+            if (bytes == null && file == null)
+                throw new IllegalStateException ("Part '" + name + "' is closed");
+        }
+    }
+
+    private final InputStream input;
+    /** Delimiter preceding each part: CRLF, '--' and the boundary. */
+    private final byte[] delimiter;
+    private final long maxPartSize;
+    private final int maxParts;
+    private final List<Part> parts = new ArrayList<> ();
+
+    /** Read buffer (pooled), data is kept between 'position' and 'limit'. */
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    private boolean finished;
+    private boolean iterated;
+    private Part next;
+
+    /**
+     * @param input The request body (limited to the maximum request size).
+     * @param boundary The boundary of the parts.
+     * @param maxPartSize The maximum size of a part.
+     * @param maxParts The maximum number of parts.
+     */
+    Multipart (InputStream input, String boundary, long maxPartSize, int maxParts) {
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes (ISO_8859_1);
+        this.maxPartSize = maxPartSize;
+        this.maxParts = maxParts;
+
+        // The first delimiter has no CRLF, it is added to find all delimiters the same way
+        buffer = acquire ();
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+    }
+
+    /**
+     * Parts can only be iterated once (they are read from the request body).
+     *
+     * @return An iterator reading the parts as they are requested.
+     */
+    @Override public Iterator<Part> iterator () {
+        if (iterated)
+            throw new IllegalStateException ("Parts can only be iterated once");
+        iterated = true;
+
+        return new Iterator<Part> () {
+            @Override public boolean hasNext () {
+                if (next == null)
+                    next = readPart ();
+                return next != null;
+            }
+
+            @Override public Part next () {
+                if (!hasNext ())
+                    throw new NoSuchElementException ();
+
+                final Part part = next;
+                next = null;
+                return part;
+            }
+        };
+    }
+
+    /**
+     * Closes the parts read (and releases the read buffer).
+     */
+    @Override public void close () {
+        for (Part part : parts)
+            part.close ();
+        parts.clear ();
+
+        if (buffer != null) {
+            release (buffer);
+            buffer = null;
+        }
+    }
+
+    private Part readPart () {
+        if (finished)
+            return null;
+        if (buffer == null)
+            throw new IllegalStateException ("Multipart is closed");
+
+        try {
+            // Skips the preamble (or the data of the previous part not read)
+            while (readData (null, 0, BUFFER_SIZE) != -1)
+                continue;
+
+            position += delimiter.length;
+            if (!ensure (2))
+                throw HaltException.of (SC_BAD_REQUEST);
+            if (buffer[position] == '-' && buffer[position + 1] == '-') {
+                finished = true;
+                return null;
+            }
+            if (parts.size () >= maxParts)
+                throw HaltException.of (RequestBody.SC_PAYLOAD_TOO_LARGE);
+
+            // Rest of the delimiter line (it may have padding)
+            int headersSize = readLine ().length ();
+            final Map<String, String> headers = new TreeMap<> (CASE_INSENSITIVE_ORDER);
+            for (String line = readLine (); !line.isEmpty (); line = readLine ()) {
+                headersSize += line.length ();
+                final int colon = line.indexOf (':');
+                if (colon == -1 || headersSize > MAX_HEADERS)
+                    throw HaltException.of (SC_BAD_REQUEST);
+                headers.put (line.substring (0, colon).trim (), line.substring (colon + 1).trim ());
+            }
+
+            final String disposition = headers.get ("Content-Disposition");
+            final String name = disposition == null? null : parameter (disposition, "name");
+            if (name == null)
+                throw HaltException.of (SC_BAD_REQUEST);
+
+            final String fileName = parameter (disposition, "filename");
+            final Part part = readContent (unmodifiableMap (headers), name, fileName);
+            parts.add (part);
+            return part;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException (e);
+        }
+    }
+
+    /**
+     * Reads the content of a part in a pooled buffer and copies it to an array of its size. If it
+     * does not fit, it is written to a temporary file.
+     */
+    private Part readContent (Map<String, String> headers, String name, String fileName)
+        throws IOException {
+
+        final byte[] memory = acquire ();
+        Path file = null;
+        try {
+            long size = 0;
+            int count = 0;
+            while (size < memory.length
+                && (count = readData (memory, (int)size, memory.length - (int)size)) != -1)
+                size += count;
+
+            if (count == -1 || readData (memory, 0, 0) == -1) {
+                checkSize (size);
+                final byte[] bytes = Arrays.copyOf (memory, (int)size);
+                release (memory);
+                return new Part (headers, name, fileName, bytes);
+            }
+
+            checkSize (size);
+            file = Files.createTempFile ("sabina-", ".part");
+            try (FileChannel channel = FileChannel.open (file, WRITE)) {
+                write (channel, memory, (int)size);
+                while ((count = readData (memory, 0, memory.length)) != -1) {
+                    size += count;
+                    checkSize (size);
+                    write (channel, memory, count);
+                }
+            }
+            release (memory);
+            return new Part (headers, name, fileName, file, size);
+        }
+        catch (IOException | RuntimeException e) {
+            if (file != null)
+                delete (file);
+            release (memory);
+            throw e;
+        }
+    }
+
+    private void checkSize (long size) {
+        if (size > maxPartSize)
+            throw HaltException.of (RequestBody.SC_PAYLOAD_TOO_LARGE);
+    }
+
+    private static void write (FileChannel channel, byte[] data, int length) throws IOException {
+        final ByteBuffer bytes = ByteBuffer.wrap (data, 0, length);
+        while (bytes.hasRemaining ())
+            channel.write (bytes);
+    }
+
+    /**
+     * Reads data of the current part (the bytes before the next delimiter).
+     *
+     * @param target The array to copy the data to (null to skip it).
+     * @return The number of bytes read or -1 if the delimiter is reached.
+     */
+    private int readData (byte[] target, int offset, int length) throws IOException {
+        while (true) {
+            final int found = indexOf ();
+            if (found == position)
+                return -1;
+
+            // Without a delimiter, the last bytes may be the start of one
+            final int available = found != -1?
+                found - position : limit - position - (delimiter.length - 1);
+
+            if (available > 0) {
+                final int count = Math.min (available, length);
+                if (target != null)
+                    System.arraycopy (buffer, position, target, offset, count);
+                position += count;
+                return count;
+            }
+
+            if (eof)
+                throw HaltException.of (SC_BAD_REQUEST);
+            fill ();
+        }
+    }
+
+    /** @return The position of the delimiter in the buffered data (-1 if it is not there). */
+    private int indexOf () {
+        final int last = limit - delimiter.length;
+        search:
+        for (int ii = position; ii <= last; ii++) {
+            for (int jj = 0; jj < delimiter.length; jj++)
+                if (buffer[ii + jj] != delimiter[jj])
+                    continue search;
+            return ii;
+        }
+        return -1;
+    }
+
+    /** @return A header line (without the CRLF). */
+    private String readLine () throws IOException {
+        // Bytes after the position already searched (they are kept when the buffer is filled)
+        int searched = 0;
+        while (true) {
+            for (int ii = position + searched; ii < limit - 1; ii++)
+                if (buffer[ii] == '\r' && buffer[ii + 1] == '\n') {
+                    final String line = new String (buffer, position, ii - position, UTF_8);
+                    position = ii + 2;
+                    return line;
+                }
+
+            if (eof || limit - position > MAX_HEADERS)
+                throw HaltException.of (SC_BAD_REQUEST);
+
+            searched = Math.max (0, limit - 1 - position);
+            fill ();
+        }
+    }
+
+    /** @return True if the given number of bytes is buffered (false if the body ended). */
+    private boolean ensure (int bytes) throws IOException {
+        while (limit - position < bytes && !eof)
+            fill ();
+        return limit - position >= bytes;
+    }
+
+    /** Moves the buffered data to the start of the buffer and reads more after it. */
+    private void fill () throws IOException {
+        if (position > 0) {
+            System.arraycopy (buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        final int count = input.read (buffer, limit, buffer.length - limit);
+        if (count == -1)
+            eof = true;
+        else
+            limit += count;
+    }
+}
@@ -14,18 +14,20 @@
 
 package sabina;
 
-import static java.util.Collections.unmodifiableMap;
 import static java.util.logging.Logger.getLogger;
 
-import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.*;
 import java.util.logging.Logger;
-import javax.servlet.http.Cookie;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 import sabina.route.RouteMatch;
+import sabina.server.Exchange;
+import sabina.server.ExchangeSession;
 
 /**
  * Provides information about the HTTP request
@@ -35,13 +37,29 @@ import sabina.route.RouteMatch;
 public final class Request {
     private static final Logger LOG = getLogger(Request.class.getName ());
     private static final String USER_AGENT = "user-agent";
+    private static final long MAX_BODY = Long.getLong ("sabina.body.max", 10 * 1024 * 1024);
 
-    public static Request create (
-        final RouteMatch match,
-        final HttpServletRequest request,
-        final HttpServletResponse response) {
+    public static Request create (final RouteMatch match, final Exchange exchange) {
+        return new Request (match, exchange);
+    }
 
-        return new Request (match, request, response);
+    /**
+     * Binds a request to the next filter or route handling it, so a single instance is used
+     * by all the handlers of a request. Route parameters are computed again (when used) and
+     * the body set in the response by the previous handler is discarded.
+     *
+     * @param request The request passed to the previous handler.
+     * @param match The route match of the next handler.
+     * @return The given request.
+     */
+    public static Request bind (final Request request, final RouteMatch match) {
+        if (request.match != match) {
+            request.match = match;
+            request.params = null;
+            request.splat = null;
+        }
+        request.response.body (null);
+        return request;
     }
 
     public static List<String> convertRouteToList (final String route) {
@@ -55,14 +73,17 @@ public final class Request {
     }
 
     public final Response response;
-    private final Map<String, String> params;
-    private final List<String> splat;
-    private final HttpServletRequest servletRequest;
+    private final Exchange exchange;
+    private RouteMatch match;
 
     /* Lazy loaded stuff */
+    private Map<String, String> params;
+    private List<String> splat;
     private Session session = null;
     private String body = null;
+    private byte[] bodyBytes;
     private Set<String> headers;
+    private Map<String, String> cookies;
 
     //    request.media_type        # media type of request.body            DONE, content type?
     //    request["SOME_HEADER"]    # value of SOME_HEADER header,          DONE
@@ -81,23 +102,13 @@ public final class Request {
     /**
      * Constructor.
      *
-     * @param match   the route match.
-     * @param request the servlet request.
-     * @param response .
+     * @param match the route match.
+     * @param exchange the request and its response.
      */
-    Request (
-        final RouteMatch match,
-        final HttpServletRequest request,
-        final HttpServletResponse response) {
-
-        this.servletRequest = request;
-        this.response = new Response (response);
-
-        List<String> requestList = convertRouteToList (match.requestURI);
-        List<String> matchedList = convertRouteToList (match.entry.path);
-
-        params = getParams(requestList, matchedList);
-        splat = getSplat(requestList, matchedList);
+    Request (final RouteMatch match, final Exchange exchange) {
+        this.match = match;
+        this.exchange = exchange;
+        this.response = new Response (exchange);
     }
 
     /**
@@ -106,7 +117,9 @@ public final class Request {
      * @return a map containing all route params
      */
     public Map<String, String> params () {
-        return unmodifiableMap (params);
+        if (params == null)
+            params = match.params ();
+        return params;
     }
 
     /**
@@ -121,14 +134,16 @@ public final class Request {
             return null;
 
         return param.startsWith (":")?
-            params.get (param.toLowerCase ()) :
-            params.get (":" + param.toLowerCase ());
+            params ().get (param.toLowerCase ()) :
+            params ().get (":" + param.toLowerCase ());
     }
 
     /**
      * @return an array containing the splat (wildcard) parameters
      */
     public String[] splat () {
+        if (splat == null)
+            splat = match.splat ();
         return splat.toArray (new String[splat.size ()]);
     }
 
@@ -137,7 +152,7 @@ public final class Request {
     //    request.request_method    # "GET",                                DONE
      */
     public String requestMethod () {
-        return servletRequest.getMethod ();
+        return exchange.method ();
     }
 
     /**
@@ -145,7 +160,7 @@ public final class Request {
     //    request.scheme            # "http"                                DONE
      */
     public String scheme () {
-        return servletRequest.getScheme ();
+        return exchange.scheme ();
     }
 
     /**
@@ -153,21 +168,21 @@ public final class Request {
     //    request.host              # "example.com"                         DONE
      */
     public String host () {
-        return servletRequest.getServerName ();
+        return exchange.host ();
     }
 
     /**
      * @return the user-agent
      */
     public String userAgent () {
-        return servletRequest.getHeader (USER_AGENT);
+        return exchange.header (USER_AGENT);
     }
 
     /**
      * @return the server port
      */
     public int port () {
-        return servletRequest.getServerPort ();
+        return exchange.port ();
     }
 
     /**
@@ -176,67 +191,201 @@ public final class Request {
     //    request.path_info         # "/foo",                               DONE
      */
     public String pathInfo () {
-        return servletRequest.getPathInfo ();
+        return exchange.pathInfo ();
     }
 
     /**
      * @return the servlet path
      */
     public String servletPath () {
-        return servletRequest.getServletPath ();
+        return exchange.servletPath ();
     }
 
     /**
      * @return the context path
      */
     public String contextPath () {
-        return servletRequest.getContextPath ();
+        return exchange.contextPath ();
     }
 
     /**
      * @return the URL string
      */
     public String url () {
-        return servletRequest.getRequestURL ().toString ();
+        return exchange.url ();
     }
 
     /**
      * @return the content type of the body
      */
     public String contentType () {
-        return servletRequest.getContentType ();
+        return exchange.contentType ();
     }
 
     /**
      * @return the client's IP address
      */
     public String ip () {
-        return servletRequest.getRemoteAddr ();
+        return exchange.ip ();
     }
 
     /**
-     * @return the request body sent by the client
+     * Returns the request body decoded with the charset of its content type (UTF-8 if it has
+     * none). It is limited to the default maximum size (see {@link #bodyBytes()}).
+     *
+     * @return the request body sent by the client (null if it can not be read)
      */
     public String body () {
         if (body == null) {
-            try (InputStreamReader input =
-                new InputStreamReader (servletRequest.getInputStream ())) {
-
-                body = new Scanner (input).useDelimiter ("\\A").next ();
+            try {
+                body = new String (bodyBytes (), RequestBody.charset (contentType ()));
             }
-            catch (Exception e) {
+            catch (UncheckedIOException e) {
                 LOG.warning ("Exception when reading body: " + e.getMessage ());
             }
         }
         return body;
     }
 
+    /**
+     * Reads the request body up to the size set with the 'sabina.body.max' system property
+     * (10 MB by default).
+     *
+     * @return The bytes of the body.
+     * @see #bodyBytes(long)
+     */
+    public byte[] bodyBytes () {
+        return bodyBytes (MAX_BODY);
+    }
+
+    /**
+     * Reads the whole request body. If it is bigger than the maximum size, the request is
+     * halted with status 413 (before reading it if its length is known). The result is kept,
+     * so the body can be read again (ie: by the route after a filter).
+     *
+     * @param maxSize The maximum size of the body in bytes.
+     * @return The bytes of the body.
+     * @throws UncheckedIOException If the body can not be read.
+     */
+    public byte[] bodyBytes (long maxSize) {
+        if (bodyBytes == null) {
+            try {
+                final long length = exchange.contentLength ();
+                bodyBytes = RequestBody.read (exchange.input (), length, maxSize);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException (e);
+            }
+        }
+        else {
+            RequestBody.check (bodyBytes.length, maxSize);
+        }
+        return bodyBytes;
+    }
+
+    /**
+     * @return The request body limited to the default maximum size.
+     * @see #bodyStream(long)
+     */
+    public InputStream bodyStream () {
+        return bodyStream (MAX_BODY);
+    }
+
+    /**
+     * Returns the request body as a stream (to process big bodies without loading them in
+     * memory). Reading more than the maximum size halts the request with status 413. The
+     * body can only be read once (unless it was already loaded with {@link #bodyBytes()}).
+     *
+     * @param maxSize The maximum size of the body in bytes.
+     * @return A stream with the body.
+     * @throws UncheckedIOException If the body can not be opened.
+     */
+    public InputStream bodyStream (long maxSize) {
+        if (bodyBytes != null) {
+            RequestBody.check (bodyBytes.length, maxSize);
+            return new ByteArrayInputStream (bodyBytes);
+        }
+
+        RequestBody.check (exchange.contentLength (), maxSize);
+        try {
+            return new RequestBody.LimitedStream (exchange.input (), maxSize);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException (e);
+        }
+    }
+
+    /**
+     * @return The request body limited to the default maximum size.
+     * @see #bodyChannel(long)
+     */
+    public ReadableByteChannel bodyChannel () {
+        return bodyChannel (MAX_BODY);
+    }
+
+    /**
+     * Returns the request body as a channel (backends with channel based IO provide it
+     * without stream wrappers). It is limited like {@link #bodyStream(long)}.
+     *
+     * @param maxSize The maximum size of the body in bytes.
+     * @return A channel with the body.
+     * @throws UncheckedIOException If the body can not be opened.
+     */
+    public ReadableByteChannel bodyChannel (long maxSize) {
+        if (bodyBytes != null)
+            return Channels.newChannel (bodyStream (maxSize));
+
+        RequestBody.check (exchange.contentLength (), maxSize);
+        try {
+            return new RequestBody.LimitedChannel (exchange.inputChannel (), maxSize);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException (e);
+        }
+    }
+
+    /**
+     * @return The parts of a multipart request limited to the default maximum body size.
+     * @see #multipart(long, long)
+     */
+    public Multipart multipart () {
+        return multipart (MAX_BODY, MAX_BODY);
+    }
+
+    /**
+     * Returns the parts of a 'multipart/form-data' request. They are parsed from the body
+     * stream while they are iterated, so they must be closed (closing the result) when they
+     * are not needed.
+     *
+     * @param maxPartSize The maximum size of each part in bytes.
+     * @param maxSize The maximum size of the whole body in bytes.
+     * @return The parts of the body (up to 1000).
+     * @see #multipart(long, long, int)
+     */
+    public Multipart multipart (long maxPartSize, long maxSize) {
+        return multipart (maxPartSize, maxSize, Multipart.MAX_PARTS);
+    }
+
+    /**
+     * Returns the parts of a 'multipart/form-data' request (see {@link #multipart(long, long)}).
+     * Bodies with more parts than allowed halt the request with status 413.
+     *
+     * @param maxPartSize The maximum size of each part in bytes.
+     * @param maxSize The maximum size of the whole body in bytes.
+     * @param maxParts The maximum number of parts.
+     * @return The parts of the body.
+     */
+    public Multipart multipart (long maxPartSize, long maxSize, int maxParts) {
+        final String boundary = Multipart.boundary (contentType ());
+        return new Multipart (bodyStream (maxSize), boundary, maxPartSize, maxParts);
+    }
+
     /**
      * @return the length of request.body
     //    request.content_length    # length of request.body,               DONE
      */
     public int contentLength () {
-        return servletRequest.getContentLength ();
+        return (int)exchange.contentLength ();
     }
 
     /**
@@ -247,7 +396,7 @@ public final class Request {
      * Example: query parameter 'id' from the following request URI: /hello?id=foo
      */
     public String queryParams (String queryParam) {
-        return servletRequest.getParameter (queryParam);
+        return exchange.queryParam (queryParam);
     }
 
     /**
@@ -257,26 +406,22 @@ public final class Request {
      * @return the value of the provided header
      */
     public String headers (String name) {
-        return servletRequest.getHeader (name);
+        return exchange.header (name);
     }
 
     /**
      * @return all query parameters
      */
     public Set<String> queryParams () {
-        return servletRequest.getParameterMap ().keySet ();
+        return exchange.queryParams ();
     }
 
     /**
      * @return all headers
      */
     public Set<String> headers () {
-        if (headers == null) {
-            headers = new TreeSet<> ();
-            Enumeration<String> enumeration = servletRequest.getHeaderNames ();
-            while (enumeration.hasMoreElements ())
-                headers.add (enumeration.nextElement ());
-        }
+        if (headers == null)
+            headers = new TreeSet<> (exchange.headerNames ());
         return headers;
     }
 
@@ -285,7 +430,7 @@ public final class Request {
     //    request.query_string      # "",                                   DONE
      */
     public String queryString () {
-        return servletRequest.getQueryString ();
+        return exchange.queryString ();
     }
 
     /**
@@ -295,7 +440,7 @@ public final class Request {
      * @param value     The attribute value
      */
     public void attribute (String attribute, Object value) {
-        servletRequest.setAttribute (attribute, value);
+        exchange.attribute (attribute, value);
     }
 
     /**
@@ -305,18 +450,14 @@ public final class Request {
      * @return the value for the provided attribute
      */
     public Object attribute (String name) {
-        return servletRequest.getAttribute (name);
+        return exchange.attribute (name);
     }
 
     /**
      * @return all attributes
      */
     public Set<String> attributes () {
-        Set<String> attrList = new HashSet<> ();
-        Enumeration<String> attributes = servletRequest.getAttributeNames ();
-        while (attributes.hasMoreElements ())
-            attrList.add (attributes.nextElement ());
-        return attrList;
+        return exchange.attributeNames ();
     }
 
     /**
@@ -327,7 +468,7 @@ public final class Request {
      */
     public Session session () {
         if (session == null)
-            session = new Session (servletRequest.getSession ());
+            session = new Session (exchange.session (true));
 
         return session;
     }
@@ -344,9 +485,9 @@ public final class Request {
      */
     public Session session (boolean create) {
         if (session == null) {
-            HttpSession httpSession = servletRequest.getSession (create);
-            if (httpSession != null)
-                session = new Session (httpSession);
+            ExchangeSession exchangeSession = exchange.session (create);
+            if (exchangeSession != null)
+                session = new Session (exchangeSession);
         }
         return session;
     }
@@ -356,13 +497,9 @@ public final class Request {
     //    request.cookies           # hash of browser cookies,              DONE
      */
     public Map<String, String> cookies () {
-        Map<String, String> result = new HashMap<> ();
-        Cookie[] cookies = servletRequest.getCookies ();
-        if (cookies != null)
-            for (Cookie cookie : cookies)
-                result.put (cookie.getName (), cookie.getValue ());
-
-        return result;
+        if (cookies == null)
+            cookies = exchange.cookies ();
+        return cookies;
     }
 
     /**
@@ -373,73 +510,21 @@ public final class Request {
      * @return cookie value or null if the cookie was not found
      */
     public String cookie (String name) {
-        Cookie[] cookies = servletRequest.getCookies ();
-        if (cookies != null)
-            for (Cookie cookie : cookies)
-                if (cookie.getName ().equals (name))
-                    return cookie.getValue ();
-
-        return null;
+        return cookies ().get (name);
     }
 
     /**
      * @return the part of this request's URL from the protocol name up to the query string in the first line of the HTTP request.
      */
-    public String uri() {
-        return servletRequest.getRequestURI();
+    public String uri () {
+        return exchange.uri ();
     }
 
     /**
      * @return Returns the name and version of the protocol the request uses
      */
-    public String protocol() {
-        return servletRequest.getProtocol();
-    }
-
-    private static Map<String, String> getParams (List<String> request, List<String> matched) {
-        LOG.fine ("get params");
-
-        Map<String, String> params = new HashMap<> ();
-
-        for (int i = 0; (i < request.size ()) && (i < matched.size ()); i++) {
-            String matchedPart = matched.get (i);
-            if (matchedPart.startsWith (":")) {
-                LOG.fine ("matchedPart: "
-                    + matchedPart
-                    + " = "
-                    + request.get (i));
-                params.put (matchedPart.toLowerCase (), request.get (i));
-            }
-        }
-        return unmodifiableMap (params);
-    }
-
-    private static List<String> getSplat(List<String> request, List<String> matched) {
-        LOG.fine("get splat");
-
-        int nbrOfRequestParts = request.size();
-        int nbrOfMatchedParts = matched.size();
-
-        boolean sameLength = (nbrOfRequestParts == nbrOfMatchedParts);
-
-        List<String> splat = new ArrayList<> ();
-
-        for (int i = 0; (i < nbrOfRequestParts) && (i < nbrOfMatchedParts); i++) {
-            String matchedPart = matched.get(i);
-
-            if (matchedPart.equals ("*")) {
-
-                StringBuilder splatParam = new StringBuilder(request.get(i));
-                if (!sameLength && (i == (nbrOfMatchedParts - 1))) {
-                    for (int j = i + 1; j < nbrOfRequestParts; j++) {
-                        splatParam.append ("/");
-                        splatParam.append (request.get (j));
-                    }
-                }
-                splat.add (splatParam.toString ());
-            }
-        }
-        return Collections.unmodifiableList (splat);
+    public String protocol () {
+        return exchange.protocol ();
     }
 
     /*
@@ -484,7 +569,7 @@ public final class Request {
      * NOTE: When using this don't catch exceptions of type HaltException, or if catched,
      * re-throw otherwise halt will not work.
      */
-    public void halt () { throw new HaltException (); }
+    public void halt () { throw HaltException.of (); }
 
     /**
      * Immediately stops a request within a filter or route with specified status code
@@ -493,7 +578,7 @@ public final class Request {
      *
      * @param status the status code.
      */
-    public void halt (final int status) { throw new HaltException (status); }
+    public void halt (final int status) { throw HaltException.of (status); }
 
     /**
      * Immediately stops a request within a filter or route with specified body content
@@ -517,10 +602,17 @@ public final class Request {
         throw new HaltException (status, body);
     }
 
+    /**
+     * Stops a route and continues with the next route matching the request (filters are not
+     * run again). If there is none, the request is handled as if no route matched it.
+     * NOTE: When using this don't catch exceptions of type PassException, or if catched,
+     * re-throw otherwise pass will not work.
+     */
+    public void pass () { throw PassException.PASS; }
+
     /*
      * TODO Implement these methods!
      */
-    public void pass () {}
     public void template (final String template, final Object params) {}
     public void template (final String template, final String layout, final Object params) {}
 }
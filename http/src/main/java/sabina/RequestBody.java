@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+
+/**
+ * Reads request bodies up to a maximum size. Bigger bodies halt the request with status 413
+ * (as soon as the limit is passed, or before reading if 'Content-Length' is bigger).
+ */
+final class RequestBody {
+    static final int SC_PAYLOAD_TOO_LARGE = 413;
+
+    /** Bodies are copied in byte arrays, so they can not be bigger than this. */
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+    private static final int BUFFER = 8 * 1024;
+    /** Biggest array allocated before reading (the declared length may be false). */
+    static final int MAX_INITIAL = 64 * 1024;
+
+    /** Stream counting the bytes read and halting when they pass the limit. */
+    static final class LimitedStream extends FilterInputStream {
+        private long left;
+
+        LimitedStream (InputStream input, long maxSize) {
+            super (input);
+            left = maxSize;
+        }
+
+        @Override public int read () throws IOException {
+            final int result = super.read ();
+            if (result != -1)
+                count (1);
+            return result;
+        }
+
+        @Override public int read (byte[] b, int off, int len) throws IOException {
+            final int result = super.read (b, off, len);
+            if (result > 0)
+                count (result);
+            return result;
+        }
+
+        @Override public long skip (long n) throws IOException {
+            final long result = super.skip (n);
+            count (result);
+            return result;
+        }
+
+        @Override public boolean markSupported () {
+            return false;
+        }
+
+        private void count (long bytes) {
+            left -= bytes;
+            if (left < 0)
+                throw HaltException.of (SC_PAYLOAD_TOO_LARGE);
+        }
+    }
+
+    /** Channel counting the bytes read and halting when they pass the limit. */
+    static final class LimitedChannel implements ReadableByteChannel {
+        private final ReadableByteChannel channel;
+        private long left;
+
+        LimitedChannel (ReadableByteChannel channel, long maxSize) {
+            this.channel = channel;
+            left = maxSize;
+        }
+
+        @Override public int read (ByteBuffer dst) throws IOException {
+            final int result = channel.read (dst);
+            if (result > 0) {
+                left -= result;
+                if (left < 0)
+                    throw HaltException.of (SC_PAYLOAD_TOO_LARGE);
+            }
+            return result;
+        }
+
+        @Override public boolean isOpen () {
+            return channel.isOpen ();
+        }
+
+        @Override public void close () throws IOException {
+            channel.close ();
+        }
+    }
+
+    /**
+     * Halts the request if its declared length is bigger than the maximum.
+     *
+     * @param length The 'Content-Length' of the request (-1 if it is unknown).
+     * @param maxSize The maximum size allowed.
+     */
+    static void check (long length, long maxSize) {
+        if (length > maxSize)
+            throw HaltException.of (SC_PAYLOAD_TOO_LARGE);
+    }
+
+    /**
+     * Reads a whole body. If its length is known, it is read in an array of that size
+     * (without intermediate copies). Arrays for bodies over 64 KB start at that size and grow
+     * as data arrives, so clients can not make the server reserve memory they do not send.
+     *
+     * @param input The body.
+     * @param length The 'Content-Length' of the request (-1 if it is unknown).
+     * @param maxSize The maximum size allowed.
+     * @return The bytes of the body.
+     * @throws IOException If the body can not be read.
+     */
+    static byte[] read (InputStream input, long length, long maxSize) throws IOException {
+        final long limit = Math.min (maxSize, MAX_ARRAY);
+        check (length, limit);
+        final InputStream limited = new LimitedStream (input, limit);
+
+        if (length >= 0) {
+            byte[] body = new byte[(int)Math.min (length, MAX_INITIAL)];
+            int read = 0;
+            while (read < length) {
+                if (read == body.length)
+                    body = Arrays.copyOf (body, (int)Math.min (length, (long)read * 2));
+
+                final int count = limited.read (body, read, body.length - read);
+                if (count == -1)
+                    return Arrays.copyOf (body, read);
+                read += count;
+            }
+            return body;
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream ();
+        final byte[] buffer = new byte[BUFFER];
+        for (int count = limited.read (buffer); count != -1; count = limited.read (buffer))
+            body.write (buffer, 0, count);
+        return body.toByteArray ();
+    }
+
+    /**
+     * @param contentType The 'Content-Type' of the request (may be null).
+     * @return The charset of the content type or UTF-8 if it has none (or it is not supported).
+     */
+    static Charset charset (String contentType) {
+        if (contentType == null)
+            return UTF_8;
+
+        for (String parameter : contentType.split (";")) {
+            final String trimmed = parameter.trim ();
+            if (trimmed.regionMatches (true, 0, "charset=", 0, 8)) {
+                String name = trimmed.substring (8).trim ();
+                if (name.length () > 1 && name.startsWith ("\"") && name.endsWith ("\""))
+                    name = name.substring (1, name.length () - 1);
+                try {
+                    return Charset.forName (name);
+                }
+                catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                    return UTF_8;
+                }
+            }
+        }
+        return UTF_8;
+    }
+
+    private RequestBody () {
+        throw new IllegalStateException ();
+    }
+}
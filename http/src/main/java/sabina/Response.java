@@ -17,12 +17,11 @@ package sabina;
 import static java.lang.String.format;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Logger.getLogger;
-import static javax.servlet.http.HttpServletResponse.SC_FOUND;
 
 import java.io.IOException;
 import java.util.logging.Logger;
-import javax.servlet.http.Cookie;
-import javax.servlet.http.HttpServletResponse;
+
+import sabina.server.Exchange;
 
 /**
  * Provides functionality for modifying the response.
@@ -31,15 +30,16 @@ import javax.servlet.http.HttpServletResponse;
  */
 public final class Response {
     private static final Logger LOG = getLogger (Response.class.getName ());
+    private static final int SC_FOUND = 302;
 
-    public static Response create (HttpServletResponse response) {
-        return new Response (response);
+    public static Response create (Exchange exchange) {
+        return new Response (exchange);
     }
 
-    private final HttpServletResponse response;
+    private final Exchange response;
     private String body;
 
-    Response (final HttpServletResponse response) {
+    Response (final Exchange response) {
         this.response = response;
     }
 
@@ -49,7 +49,7 @@ public final class Response {
      * @param statusCode the status code
      */
     public void status (int statusCode) {
-        response.setStatus (statusCode);
+        response.status (statusCode);
     }
 
     /**
@@ -58,7 +58,7 @@ public final class Response {
      * @param contentType the content type
      */
     public void type (String contentType) {
-        response.setContentType (contentType);
+        response.responseType (contentType);
     }
 
     /**
@@ -92,7 +92,7 @@ public final class Response {
         LOG.fine (format ("Redirecting (%s %s to %s)", "Found", SC_FOUND, location));
 
         try {
-            response.sendRedirect (location);
+            response.redirect (location);
         }
         catch (IOException ioException) {
             LOG.warning ("Redirect failure: " + ioException.getMessage ());
@@ -109,7 +109,7 @@ public final class Response {
         if (LOG.isLoggable (FINE))
             LOG.fine (format ("Redirecting (%s to %s)", httpStatusCode, location));
 
-        response.setStatus (httpStatusCode);
+        response.status (httpStatusCode);
         response.setHeader ("Location", location);
         response.setHeader ("Connection", "close");
         try {
@@ -182,11 +182,7 @@ public final class Response {
      * zero - deletes the cookie)
      */
     public void cookie (String path, String name, String value, int maxAge, boolean secured) {
-        Cookie cookie = new Cookie (name, value);
-        cookie.setPath (path);
-        cookie.setMaxAge (maxAge);
-        cookie.setSecure (secured);
-        response.addCookie (cookie);
+        response.addCookie (path, name, value, maxAge, secured);
     }
 
     /**
@@ -195,8 +191,6 @@ public final class Response {
      * @param name Name of the cookie.
      */
     public void removeCookie (String name) {
-        Cookie cookie = new Cookie (name, "");
-        cookie.setMaxAge (0);
-        response.addCookie (cookie);
+        response.addCookie (null, name, "", 0, false);
     }
 }
@@ -23,11 +23,15 @@ import static sabina.util.Strings.isNullOrEmpty;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import sabina.route.MediaType;
+import sabina.route.RoutePattern;
+
 /**
  * A Route is built up by a path (for url-matching) and the implementation of the 'handle'
  * method.
  * When a request is made, if present, the matching routes 'handle' method is invoked. The
  * object that is returned from 'handle' will be set to the response body (toString()).
+ * byte[], ByteBuffer, InputStream, ReadableByteChannel and Path results are written as bytes.
  *
  * @author Per Wendel
  */
@@ -36,13 +40,26 @@ public final class Route {
     public interface Handler extends Function<Request, Object> {}
     /** This is just a "type alias". */
     public interface VoidHandler extends Consumer<Request> {}
+    /**
+     * A handler that never blocks. Event loop backends (ie: Netty) run it in the IO thread
+     * instead of offloading it to a worker.
+     */
+    public interface NonBlockingHandler extends Handler {}
 
     public static final String ALL_PATHS = "+/*paths";
     private static final String DEFAULT_ACCEPT_TYPE = "*/*";
 
     public final String path;
     public final String acceptType;
+    /** The accept type parsed (used to negotiate the route for the request 'Accept' header). */
+    public final MediaType acceptMediaType;
     public final HttpMethod method;
+    /** The path split in segments (used to match requests and to extract parameters). */
+    public final RoutePattern pattern;
+    /** The handler if it returns a constant response (null otherwise). */
+    public final Constant constant;
+    /** False if the handler never blocks (constants and {@link NonBlockingHandler}s). */
+    public final boolean blocking;
     private final Handler handler;
 
     /**
@@ -91,8 +108,12 @@ public final class Route {
 
         this.path = path;
         this.acceptType = acceptType;
+        this.acceptMediaType = new MediaType (acceptType);
         this.method = method;
         this.handler = handler;
+        this.constant = handler instanceof Constant? (Constant)handler : null;
+        this.blocking = constant == null && !(handler instanceof NonBlockingHandler);
+        this.pattern = new RoutePattern (path);
     }
 
     public boolean isFilter () {
@@ -106,6 +106,38 @@ public final class Sabina {
         s.filesLocation (folder, externalFolder);
     }
 
+    /**
+     * Wraps a blocking handler to run it in the default server executor (releasing the
+     * container thread meanwhile).
+     *
+     * @param h The handler to run asynchronously.
+     * @return A handler to be used in a route definition.
+     */
+    public static Handler async (Handler h) {
+        return s.async (h);
+    }
+
+    /**
+     * Marks a handler that never blocks (event loop backends run it in the IO thread).
+     *
+     * @param h The handler that does not block.
+     * @return A handler to be used in a route definition.
+     */
+    public static Handler nonBlocking (Handler h) {
+        return s.nonBlocking (h);
+    }
+
+    /**
+     * Creates a handler returning always the same body (encoded only once).
+     *
+     * @param contentType The content type of the response.
+     * @param body The response body.
+     * @return A handler to be used in a route definition.
+     */
+    public static Constant constant (String contentType, String body) {
+        return new Constant (contentType, body);
+    }
+
     public static void start (int port) {
         s.port (port);
         s.start ();
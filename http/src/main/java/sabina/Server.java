@@ -14,22 +14,30 @@
 
 package sabina;
 
+import static java.lang.Boolean.getBoolean;
 import static java.lang.Integer.parseInt;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.logging.Logger.getLogger;
 import static sabina.HttpMethod.*;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
 
 import sabina.Route.Handler;
+import sabina.Route.NonBlockingHandler;
 import sabina.Route.VoidHandler;
+import sabina.route.NegotiationCache;
 import sabina.route.RouteMatcher;
 import sabina.route.RouteMatcherFactory;
 import sabina.server.Backend;
 import sabina.server.BackendFactory;
+import sabina.util.Threads;
 
 /**
  * The main building block of a Sabina application is a set of routes. A route is
@@ -56,6 +64,7 @@ public final class Server {
 
     private static final int DEFAULT_PORT = 4567;
     private static final String DEFAULT_HOST = "0.0.0.0";
+    private static final int SC_SERVICE_UNAVAILABLE = 503;
 
     public static Server server (int port) {
         return new Server (port);
@@ -72,10 +81,17 @@ public final class Server {
     private String staticFileFolder;
     private String externalStaticFileFolder;
 
-    private String backend = getProperty ("sabina.backend", "undertow");
+    private String backend = getProperty ("sabina.backend", BackendFactory.defaultBackend ());
 
     private Backend server;
     private RouteMatcher routeMatcher = RouteMatcherFactory.create ();
+    /** Runs the handlers wrapped with 'async' (set by the user, null to use the default). */
+    private Executor executor;
+    /** Default executor (created when needed, for the threads mode it was created with). */
+    private ExecutorService defaultExecutor;
+    private boolean defaultVirtual;
+    /** If true, all handlers are run in the executor (made of virtual threads by default). */
+    private boolean virtualThreads = getBoolean ("sabina.virtual.threads");
 
     public Server () {
         super ();
@@ -190,8 +206,12 @@ public final class Server {
     }
 
     public void start () {
+        // Checked here, the backend is started in another thread
+        final Executor handlers = virtualThreads? executor () : null;
+        routeMatcher.freeze ();
         new Thread (() -> {
-            server = BackendFactory.create (backend, routeMatcher, hasMultipleHandlers ());
+            server = BackendFactory.create (
+                backend, routeMatcher, hasMultipleHandlers (), handlers);
             server.startUp (
                 ipAddress,
                 port,
@@ -222,6 +242,15 @@ public final class Server {
         return server != null;
     }
 
+    /**
+     * Returns the cache of the content negotiation results (useful to check its hits and misses).
+     *
+     * @return The negotiation cache of the server routes.
+     */
+    public NegotiationCache negotiationCache () {
+        return routeMatcher.negotiationCache ();
+    }
+
     public void reset () {
         if (isRunning ())
             throw new IllegalStateException ("Can not reset running server");
@@ -229,6 +258,18 @@ public final class Server {
         routeMatcher = RouteMatcherFactory.create ();
     }
 
+    /**
+     * Removes the routes (or filters) of a method and path. It can be called while the server
+     * is running (requests in progress finish with the routes they found).
+     *
+     * @param method The method of the routes.
+     * @param path The path of the routes (as it was registered).
+     * @return True if any route was removed.
+     */
+    public boolean remove (HttpMethod method, String path) {
+        return routeMatcher.removeRoute (method, path);
+    }
+
     Server addRoute (Route action) {
         routeMatcher.processRoute (action);
         return this;
@@ -258,6 +299,93 @@ public final class Server {
         return add (method, p, ct, wrap (h));
     }
 
+    /**
+     * Sets the executor used to run the handlers wrapped with {@link #async(Handler)} (and
+     * all handlers if {@link #virtualThreads(boolean)} is enabled). By default virtual threads
+     * are used in that mode, and a bounded pool otherwise (sized with the 'sabina.threads' and
+     * 'sabina.threads.queue' system properties, see {@link Threads#boundedThreads(String)}).
+     *
+     * @param executor The executor for asynchronous handlers.
+     */
+    public synchronized void executor (Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * If no executor was set, the default one is created for the current threads mode (a
+     * default executor created before changing the mode is replaced).
+     *
+     * @return The executor used to run asynchronous handlers.
+     * @throws IllegalStateException If virtual threads are enabled but not supported.
+     */
+    public synchronized Executor executor () {
+        if (executor != null)
+            return executor;
+
+        if (defaultExecutor == null || defaultVirtual != virtualThreads) {
+            if (defaultExecutor != null)
+                defaultExecutor.shutdown ();
+            defaultExecutor = virtualThreads?
+                Threads.virtualThreads ("sabina-handler") : Threads.boundedThreads ("sabina-async");
+            defaultVirtual = virtualThreads;
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Runs every handler in a virtual thread instead of a backend worker thread (the request
+     * is suspended meanwhile). Blocking handlers (ie: JDBC calls) do not exhaust the backend
+     * workers then. It needs a JVM with virtual threads (JDK 21+) unless an executor is set.
+     *
+     * <p>It can also be enabled with the 'sabina.virtual.threads' system property (checked
+     * when the server is started). It has to be set before the server is started.
+     *
+     * @param virtualThreads True to run handlers in virtual threads.
+     * @throws IllegalStateException If the server is running, or if virtual threads are not
+     * supported and no executor is set.
+     */
+    public synchronized void virtualThreads (boolean virtualThreads) {
+        if (isRunning ())
+            throw new IllegalStateException ("Can not change threads of a running server");
+        if (virtualThreads && executor == null && !Threads.virtualThreadsAvailable ())
+            throw new IllegalStateException ("Virtual threads not supported (JDK 21+ needed)");
+
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Wraps a blocking handler to run it in the server executor. The request is suspended
+     * (the container thread is released) until the handler finishes. Handlers may also return
+     * a CompletionStage themselves to be completed asynchronously.
+     *
+     * <p>If the executor rejects the handler (ie: the default pool is full), the request is
+     * answered with 503 (Service Unavailable).
+     *
+     * @param h The handler to run asynchronously.
+     * @return A handler returning the result of 'h' as a CompletionStage.
+     */
+    public Handler async (Handler h) {
+        return it -> {
+            try {
+                return supplyAsync (() -> h.apply (it), executor ());
+            }
+            catch (RejectedExecutionException e) {
+                throw HaltException.of (SC_SERVICE_UNAVAILABLE);
+            }
+        };
+    }
+
+    /**
+     * Marks a handler that never blocks (it does no IO, or returns a CompletionStage for it).
+     * Event loop backends run it in the IO thread saving a thread switch per request.
+     *
+     * @param h The handler that does not block.
+     * @return The handler marked as non blocking.
+     */
+    public Handler nonBlocking (Handler h) {
+        return (NonBlockingHandler)h::apply;
+    }
+
     /**
      * Maps an exception handler to be executed when an exception occurs during routing.
      *
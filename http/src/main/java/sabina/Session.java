@@ -14,26 +14,25 @@
 
 package sabina;
 
-import java.util.Enumeration;
 import java.util.Set;
 import java.util.TreeSet;
 
-import javax.servlet.http.HttpSession;
+import sabina.server.ExchangeSession;
 
 /**
  * Provides session information.
  */
 public final class Session {
-    private final HttpSession session;
+    private final ExchangeSession session;
 
     /**
-     * Creates a session with the <code>HttpSession</code>.
+     * Creates a session with the backend's <code>ExchangeSession</code>.
      *
      * @param session Session implementation.
      *
      * @throws IllegalArgumentException If the session is null.
      */
-    Session (final HttpSession session) {
+    Session (final ExchangeSession session) {
         if (session == null)
             throw new IllegalArgumentException ("Session cannot be null");
 
@@ -49,7 +48,7 @@ public final class Session {
      * @return The object with the specified name.
      */
     @SuppressWarnings("unchecked") public <T> T attribute (String name) {
-        return (T)session.getAttribute (name);
+        return (T)session.attribute (name);
     }
 
     /**
@@ -59,7 +58,7 @@ public final class Session {
      * @param value The object to be bound.
      */
     public void attribute (String name, Object value) {
-        session.setAttribute (name, value);
+        session.attribute (name, value);
     }
 
     /**
@@ -67,12 +66,7 @@ public final class Session {
      * of all the objects bound to this session.
      */
     public Set<String> attributes () {
-        TreeSet<String> attributes = new TreeSet<> ();
-        Enumeration<String> enumeration = session.getAttributeNames ();
-        while (enumeration.hasMoreElements ())
-            attributes.add (enumeration.nextElement ());
-
-        return attributes;
+        return new TreeSet<> (session.attributeNames ());
     }
 
     /**
@@ -80,14 +74,14 @@ public final class Session {
      * January 1, 1970 GMT.
      */
     public long creationTime () {
-        return session.getCreationTime ();
+        return session.creationTime ();
     }
 
     /**
      * @return A string containing the unique identifier assigned to this session.
      */
     public String id () {
-        return session.getId ();
+        return session.id ();
     }
 
     /**
@@ -96,7 +90,7 @@ public final class Session {
      * container received the request.
      */
     public long lastAccessedTime () {
-        return session.getLastAccessedTime ();
+        return session.lastAccessedTime ();
     }
 
     /**
@@ -104,7 +98,7 @@ public final class Session {
      * open between client accesses.
      */
     public int maxInactiveInterval () {
-        return session.getMaxInactiveInterval ();
+        return session.maxInactiveInterval ();
     }
 
     /**
@@ -114,7 +108,7 @@ public final class Session {
      * @param interval The interval.
      */
     public void maxInactiveInterval (int interval) {
-        session.setMaxInactiveInterval (interval);
+        session.maxInactiveInterval (interval);
     }
 
     /**
@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static sabina.route.MimeParse.bestMatch;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sabina.Fault;
+import sabina.HttpMethod;
+import sabina.Route;
+
+/**
+ * Behaviour shared by all route matchers: route tables, accept type negotiation and
+ * exception handlers. Subclasses only decide how the routes matching a path are found (the
+ * {@link RouteIndex} they build).
+ *
+ * <p>Lookups read the current {@link RouteTable} with one volatile read and no locks. Route
+ * changes (synchronized among them) build a new table and replace the current one.
+ */
+abstract class AbstractRouteMatcher implements RouteMatcher {
+    static final List<Route> EMPTY = new ArrayList<> (0);
+    private static final List<RouteMatch> EMPTY_MATCHES = new ArrayList<> (0);
+
+    /**
+     * Exception handlers registered and resolved. Both maps are immutable: they are copied
+     * and replaced when a handler is added or resolved, so they can be read without locks.
+     */
+    private static final class Faults {
+        private static final Object NONE = new Object ();
+
+        /** Registered handlers by exception class. */
+        final Map<Class<?>, Fault<?>> registered;
+        /** Handlers found for thrown exception classes (NONE if there is no handler). */
+        final Map<Class<?>, Object> resolved;
+
+        Faults (Map<Class<?>, Fault<?>> registered, Map<Class<?>, Object> resolved) {
+            this.registered = registered;
+            this.resolved = resolved;
+        }
+
+        Faults register (Fault<?> fault) {
+            final Map<Class<?>, Fault<?>> faults = new HashMap<> (registered);
+            faults.put (fault.exception, fault);
+            return new Faults (faults, new HashMap<> ());
+        }
+
+        Faults resolve (Class<?> exceptionClass, Fault<?> fault) {
+            final Map<Class<?>, Object> faults = new HashMap<> (resolved);
+            faults.put (exceptionClass, fault == null? NONE : fault);
+            return new Faults (registered, faults);
+        }
+
+        /** Returns the handler of the class or of its closest superclass with one. */
+        Fault<?> find (Class<?> exceptionClass) {
+            for (Class<?> type = exceptionClass; type != null; type = type.getSuperclass ()) {
+                final Fault<?> fault = registered.get (type);
+                if (fault != null)
+                    return fault;
+            }
+            return null;
+        }
+    }
+
+    private final AtomicReference<Faults> faults =
+        new AtomicReference<> (new Faults (new HashMap<> (), new HashMap<> ()));
+
+    /**
+     * Current routes. Before the matcher is frozen, route changes leave it pending and it is
+     * compiled when it is used. After that, changes compile a new table before publishing it.
+     */
+    private volatile RouteTable table = RouteTable.EMPTY;
+    private boolean frozen;
+
+    /** Routes chosen for the received 'Accept' headers. */
+    private final NegotiationCache negotiationCache = new NegotiationCache ();
+
+    /**
+     * Builds the structure used to find the routes matching a path.
+     *
+     * @param routes all the routes and filters in registration order
+     * @return the index of the routes
+     */
+    abstract RouteIndex index (List<Route> routes);
+
+    /**
+     * Parse and validates a route and adds it
+     *
+     * @param target the invocation target
+     */
+    @Override public synchronized void processRoute (Route target) {
+        final List<Route> routes = new ArrayList<> (table.routes);
+        routes.add (target);
+        publish (routes);
+    }
+
+    @Override public synchronized boolean removeRoute (HttpMethod method, String path) {
+        final List<Route> routes = new ArrayList<> (table.routes);
+        final boolean removed =
+            routes.removeIf (route -> route.method == method && route.path.equals (path));
+
+        if (removed)
+            publish (routes);
+        return removed;
+    }
+
+    @Override public synchronized void freeze () {
+        frozen = true;
+        publish (table.routes);
+    }
+
+    /** Replaces the route table (compiling it if the matcher is frozen). */
+    private void publish (List<Route> routes) {
+        table = new RouteTable (routes, frozen? index (routes) : null);
+        negotiationCache.clear ();
+    }
+
+    /** Returns the current table, compiling it if it is pending. */
+    private RouteTable table () {
+        final RouteTable current = table;
+        return current.isPending ()? compile () : current;
+    }
+
+    private synchronized RouteTable compile () {
+        final RouteTable current = table;
+        if (current.isPending ())
+            table = new RouteTable (current.routes, index (current.routes));
+        return table;
+    }
+
+    @Override public NegotiationCache negotiationCache () {
+        return negotiationCache;
+    }
+
+    @Override public List<RouteMatch> findFilters (
+        HttpMethod filterMethod, RouteMatch target, String path, String acceptType) {
+
+        // The target may have been found in a previous table (its chain would be missing)
+        final RouteTable current = table ();
+        final FilterChain chain =
+            target == null? current.notFoundChain : current.chains.get (target.entry);
+        if (chain == null)
+            return findTargets (filterMethod, path, acceptType);
+
+        final FilterChain.Step[] steps = chain.steps (filterMethod);
+        if (steps.length == 0)
+            return EMPTY_MATCHES;
+
+        final int[] segments = target == null? RoutePattern.segments (path) : target.segments ();
+        final List<RouteMatch> matchSet = new ArrayList<> (steps.length);
+        for (FilterChain.Step step : steps) {
+            final Route filter = step.filter;
+            if (step.conditional && !filter.pattern.matches (path, segments))
+                continue;
+
+            if (accepts (filter, acceptType))
+                matchSet.add (new RouteMatch (filter, path, segments));
+        }
+
+        return matchSet;
+    }
+
+    @Override public PathMatch findRoutes (String path) {
+        final RouteTable current = table ();
+        final PathMatch staticMatch = current.staticRoutes.find (path);
+        if (staticMatch != null)
+            return staticMatch;
+
+        final int[] segments = RoutePattern.segments (path);
+        final List<Route> routes = current.index.findRoutesForRequestedPath (path, segments);
+        return new PathMatch (path, segments, routes, false);
+    }
+
+    @Override public RouteMatch findTarget (
+        HttpMethod httpMethod, PathMatch routes, String acceptType) {
+
+        final Route entry =
+            findTargetWithGivenAcceptType (routes.targets (httpMethod), acceptType);
+        return entry != null? new RouteMatch (entry, routes.path, routes.segments) : null;
+    }
+
+    @Override public List<RouteMatch> findTargets (
+        HttpMethod httpMethod, PathMatch routes, String acceptType) {
+
+        final List<Route> targets = routes.targets (httpMethod);
+        final List<RouteMatch> matchSet = new ArrayList<> (targets.size ());
+        for (Route route : targets)
+            if (accepts (route, acceptType))
+                matchSet.add (new RouteMatch (route, routes.path, routes.segments));
+
+        return matchSet;
+    }
+
+    /**
+     * finds target for a requested route
+     *
+     * @param httpMethod the http method
+     * @param path the path
+     * @param acceptType the accept type
+     *
+     * @return the target
+     */
+    @Override public RouteMatch findTarget (
+        HttpMethod httpMethod, String path, String acceptType) {
+
+        return findTarget (httpMethod, findRoutes (path), acceptType);
+    }
+
+    /**
+     * Finds multiple targets for a requested route.
+     *
+     * @param httpMethod the http method
+     * @param path the route path
+     * @param acceptType the accept type
+     *
+     * @return the targets
+     */
+    @Override public List<RouteMatch> findTargets (
+        final HttpMethod httpMethod,
+        final String path,
+        final String acceptType) {
+
+        final List<RouteMatch> matchSet = new ArrayList<> ();
+        final int[] segments = RoutePattern.segments (path);
+        final List<Route> routeEntries =
+            table ().index.findTargetsForRequestedRoute (httpMethod, path, segments);
+
+        for (Route routeEntry : routeEntries)
+            if (accepts (routeEntry, acceptType))
+                matchSet.add (new RouteMatch (routeEntry, path, segments));
+
+        return matchSet;
+    }
+
+    /**
+     * Returns the handler associated with the provided exception class (or with its closest
+     * superclass). Results are cached, so the class hierarchy is only walked once.
+     *
+     * @param exceptionClass Type of exception
+     * @return Associated handler
+     */
+    @SuppressWarnings ("unchecked")
+    @Override
+    public Fault<? extends Exception> findHandler(Class<? extends Exception> exceptionClass) {
+        Faults current = faults.get ();
+        final Object cached = current.resolved.get (exceptionClass);
+        if (cached != null)
+            return cached == Faults.NONE? null : (Fault<? extends Exception>)cached;
+
+        final Fault<?> handler = current.find (exceptionClass);
+
+        // If a handler is registered meanwhile, the result is not cached (it may be stale)
+        while (!faults.compareAndSet (current, current.resolve (exceptionClass, handler))) {
+            final Faults updated = faults.get ();
+            if (updated.registered != current.registered)
+                break;
+            current = updated;
+        }
+
+        return (Fault<? extends Exception>)handler;
+    }
+
+    /**
+     * Maps the given handler to the provided exception type. If a handler was already registered to the same type, the
+     * handler is overwritten.
+     *
+     * @param handler        Handler to map to exception
+     */
+    @Override public <T extends Exception> void processFault (final Fault<T> handler) {
+        faults.updateAndGet (current -> current.register (handler));
+    }
+
+    /**
+     * Checks if a route (or filter) accepts the requested type.
+     *
+     * @param route The route to check.
+     * @param acceptType The 'Accept' header (null accepts everything).
+     * @return True if the route accepts the type.
+     */
+    private boolean accepts (Route route, String acceptType) {
+        return acceptType == null
+            || negotiationCache.negotiate (route, acceptType, AbstractRouteMatcher::accepted)
+                != null;
+    }
+
+    private Route findTargetWithGivenAcceptType (
+        final List<Route> routeMatches, final String acceptType) {
+
+        if (routeMatches.isEmpty ())
+            return null;
+
+        if (acceptType == null)
+            return routeMatches.get (0);
+
+        return negotiationCache.negotiate (
+            routeMatches, acceptType, AbstractRouteMatcher::negotiate);
+    }
+
+    private static Route accepted (Route route, String acceptType) {
+        return MimeParse.accepts (route.acceptMediaType, acceptType)? route : null;
+    }
+
+    /**
+     * Chooses the route for an 'Accept' header: the first route of the type preferred by the
+     * client.
+     */
+    private static Route negotiate (List<Route> routes, String acceptType) {
+        final List<MediaType> types = new ArrayList<> (routes.size ());
+        for (Route route : routes)
+            types.add (route.acceptMediaType);
+
+        final int bestMatch = bestMatch (types, acceptType);
+        return bestMatch == -1? null : routes.get (bestMatch);
+    }
+}
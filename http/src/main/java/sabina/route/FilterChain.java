@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static sabina.HttpMethod.AFTER;
+import static sabina.HttpMethod.BEFORE;
+import static sabina.Route.ALL_PATHS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sabina.HttpMethod;
+import sabina.Route;
+
+/**
+ * Filters (before and after) that may apply to the requests handled by one route, computed
+ * once when the routes are frozen.
+ *
+ * <p>A filter is left out if it can not match any path of the route, and it is marked as
+ * unconditional if it matches all of them. Only the remaining filters check the path when a
+ * request is handled.
+ */
+final class FilterChain {
+    /** A filter in the chain. Conditional steps must check the path of each request. */
+    static final class Step {
+        final Route filter;
+        final boolean conditional;
+
+        Step (Route filter, boolean conditional) {
+            this.filter = filter;
+            this.conditional = conditional;
+        }
+    }
+
+    private static final int NEVER = 0, ALWAYS = 1, CONDITIONAL = 2;
+
+    /**
+     * Builds the chain for a route.
+     *
+     * @param route The route. If null, the chain is built for requests without route.
+     * @param filters All the filters, in registration order.
+     * @return The filter chain for the route.
+     */
+    static FilterChain compile (Route route, List<Route> filters) {
+        final List<Step> before = new ArrayList<> ();
+        final List<Step> after = new ArrayList<> ();
+
+        for (Route filter : filters) {
+            final int overlap = overlap (filter, route);
+            if (overlap != NEVER) {
+                final Step step = new Step (filter, overlap == CONDITIONAL);
+                (filter.method == BEFORE? before : after).add (step);
+            }
+        }
+
+        return new FilterChain (
+            before.toArray (new Step[before.size ()]), after.toArray (new Step[after.size ()]));
+    }
+
+    /**
+     * Checks which paths of a route are also matched by a filter.
+     *
+     * @return NEVER, ALWAYS or CONDITIONAL.
+     */
+    private static int overlap (Route filter, Route route) {
+        if (filter.path.equals (ALL_PATHS))
+            return ALWAYS;
+
+        if (route == null)
+            return CONDITIONAL;
+
+        final RoutePattern filterPattern = filter.pattern;
+        final RoutePattern routePattern = route.pattern;
+
+        // A route without parameters nor wildcards only matches its own path
+        if (routePattern.isStatic ())
+            return filterPattern.matches (route.path, RoutePattern.segments (route.path))?
+                ALWAYS : NEVER;
+
+        final String[] filterSegments = filterPattern.segments;
+        final String[] routeSegments = routePattern.segments;
+        final int common = Math.min (filterSegments.length, routeSegments.length);
+
+        for (int ii = 0; ii < common; ii++)
+            if (!filterPattern.isAny (ii) && !routePattern.isAny (ii)
+                && !filterSegments[ii].equals (routeSegments[ii]))
+                return NEVER;
+
+        if (!filterPattern.wildcard && !routePattern.wildcard
+            && (filterSegments.length != routeSegments.length
+            || filterPattern.trailingSlash != routePattern.trailingSlash))
+            return NEVER;
+
+        return CONDITIONAL;
+    }
+
+    private final Step[] before, after;
+
+    private FilterChain (Step[] before, Step[] after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    Step[] steps (HttpMethod filterMethod) {
+        return filterMethod == AFTER? after : before;
+    }
+}
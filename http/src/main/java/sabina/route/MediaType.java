@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static sabina.route.MimeParse.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mime type supported by a route, parsed once (when the route is created) to be scored
+ * against 'Accept' headers by {@link MimeParse#bestMatch(List, CharSequence)}.
+ *
+ * <p>The 'q' parameter is ignored (it is not used to compute the fitness). A malformed type
+ * (without '/') never matches.
+ */
+public final class MediaType {
+    final String mimeType;
+    /** Type and subtype (null if the mime type is malformed). */
+    final String type, subType;
+    /** Parameter names and values (in pairs). */
+    final String[] parameters;
+
+    public MediaType (final String mimeType) {
+        this.mimeType = mimeType;
+
+        final int length = mimeType.length ();
+        final int paramsStart = indexOf (mimeType, ';', 0, length);
+        final int start = trimStart (mimeType, 0, paramsStart);
+        final int end = trimEnd (mimeType, start, paramsStart);
+
+        if (isAny (mimeType, start, end)) {
+            type = "*";
+            subType = "*";
+        }
+        else {
+            final int slash = indexOf (mimeType, '/', start, end);
+            if (isMalformed (mimeType, slash, end)) {
+                type = null;
+                subType = null;
+            }
+            else {
+                final int subTypeEnd = indexOf (mimeType, '/', slash + 1, end);
+                type = mimeType.substring (start, slash).trim ();
+                subType = mimeType.substring (slash + 1, subTypeEnd).trim ();
+            }
+        }
+
+        final List<String> names = new ArrayList<> ();
+        final List<String> values = new ArrayList<> ();
+        for (int ii = paramsStart; ii < length; ) {
+            final int next = indexOf (mimeType, ';', ii + 1, length);
+            final int separator = parameterSeparator (mimeType, ii + 1, next);
+            if (separator != -1) {
+                final String name = mimeType.substring (ii + 1, separator).trim ();
+                final String value = mimeType.substring (
+                    separator + 1, parameterEnd (mimeType, separator + 1, next)).trim ();
+
+                if (!name.equals ("q")) {
+                    final int index = names.indexOf (name);
+                    if (index == -1) {
+                        names.add (name);
+                        values.add (value);
+                    }
+                    else {
+                        values.set (index, value);
+                    }
+                }
+            }
+            ii = next;
+        }
+
+        parameters = new String[names.size () * 2];
+        for (int ii = 0; ii < names.size (); ii++) {
+            parameters[ii * 2] = names.get (ii);
+            parameters[ii * 2 + 1] = values.get (ii);
+        }
+    }
+
+    @Override public String toString () {
+        return mimeType;
+    }
+}
@@ -14,6 +14,8 @@
 
 package sabina.route;
 
+import static java.lang.Float.floatToRawIntBits;
+import static java.lang.Float.intBitsToFloat;
 import static java.lang.Float.parseFloat;
 import static java.lang.String.format;
 import static sabina.util.Strings.isNullOrEmpty;
@@ -37,6 +39,10 @@ import java.util.*;
  *
  * <p>Modified by Alex Soto (asotobu@gmail.com) to coform naming conventions and removing
  * unnecessary dependencies.
+ *
+ * <p>Requests are negotiated with {@link #bestMatch(List, CharSequence)}, which scores the
+ * header in place (without splitting it nor allocating objects) against types parsed when
+ * the routes are created. The other methods are the original (allocating) implementation.
  */
 final class MimeParse {
     /** Constant for no mime type. */
@@ -202,21 +208,251 @@ final class MimeParse {
      * @return .
      */
     public static String bestMatch (Collection<String> supported, String header) {
-        List<ParseResults> parseResults = new LinkedList<> ();
-        List<FitnessAndQuality> weightedMatches = new LinkedList<> ();
-        for (String r : header.split (",")) {
-            parseResults.add (parseMediaRange (r));
+        final List<MediaType> types = new ArrayList<> (supported.size ());
+        for (String type : supported)
+            types.add (new MediaType (type));
+
+        final int best = bestMatch (types, header);
+        return best == -1? NO_MIME_TYPE : types.get (best).mimeType;
+    }
+
+    /**
+     * Finds the best match for an 'Accept' header among parsed types. Ties are resolved in
+     * favor of the last type, repeated types are skipped (the first one is kept). Malformed
+     * media ranges in the header are ignored.
+     *
+     * @param supported Supported types.
+     * @param header The 'Accept' header.
+     * @return The index of the best type or -1 if the header does not accept any of them.
+     */
+    static int bestMatch (List<MediaType> supported, CharSequence header) {
+        int best = -1;
+        int bestFitness = -1;
+        float bestQuality = 0;
+
+        for (int ii = 0; ii < supported.size (); ii++) {
+            if (isRepeated (supported, ii))
+                continue;
+
+            final long score = score (supported.get (ii), header);
+            final int fitness = fitness (score);
+            final float quality = quality (score);
+            if (best == -1 || fitness > bestFitness
+                || (fitness == bestFitness && quality >= bestQuality)) {
+
+                best = ii;
+                bestFitness = fitness;
+                bestQuality = quality;
+            }
+        }
+
+        return best != -1 && Float.compare (bestQuality, 0) != 0? best : -1;
+    }
+
+    /**
+     * Checks if an 'Accept' header accepts a type.
+     *
+     * @param type Supported type.
+     * @param header The 'Accept' header.
+     * @return True if the best media range for the type has a quality other than 0.
+     */
+    static boolean accepts (MediaType type, CharSequence header) {
+        return Float.compare (quality (score (type, header)), 0) != 0;
+    }
+
+    private static boolean isRepeated (List<MediaType> supported, int index) {
+        final String mimeType = supported.get (index).mimeType;
+        for (int ii = 0; ii < index; ii++)
+            if (supported.get (ii).mimeType.equals (mimeType))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Scores a type against the media ranges of a header (like
+     * {@link #fitnessAndQualityParsed(String, Collection)}).
+     *
+     * @return The fitness (high 32 bits) and the quality (low 32 bits) of the best range.
+     */
+    private static long score (MediaType type, CharSequence header) {
+        int bestFitness = -1;
+        float bestQuality = 0;
+
+        final int length = header.length ();
+        for (int start = 0, end; start <= length && type.type != null; start = end + 1) {
+            end = indexOf (header, ',', start, length);
+
+            final int paramsStart = indexOf (header, ';', start, end);
+            final int typeStart = trimStart (header, start, paramsStart);
+            final int typeEnd = trimEnd (header, typeStart, paramsStart);
+
+            final boolean typeEquals, subTypeEquals, anyType, anySubType;
+            if (isAny (header, typeStart, typeEnd)) {
+                typeEquals = type.type.equals ("*");
+                subTypeEquals = type.subType.equals ("*");
+                anyType = true;
+                anySubType = true;
+            }
+            else {
+                final int slash = indexOf (header, '/', typeStart, typeEnd);
+                if (isMalformed (header, slash, typeEnd))
+                    continue;
+
+                final int subTypeEnd = indexOf (header, '/', slash + 1, typeEnd);
+                final int subTypeStart = trimStart (header, slash + 1, subTypeEnd);
+                final int rangeTypeEnd = trimEnd (header, typeStart, slash);
+                final int rangeSubTypeEnd = trimEnd (header, subTypeStart, subTypeEnd);
+
+                typeEquals = regionEquals (header, typeStart, rangeTypeEnd, type.type);
+                subTypeEquals =
+                    regionEquals (header, subTypeStart, rangeSubTypeEnd, type.subType);
+                anyType = regionEquals (header, typeStart, rangeTypeEnd, "*");
+                anySubType = regionEquals (header, subTypeStart, rangeSubTypeEnd, "*");
+            }
+
+            if ((typeEquals || anyType || type.type.equals ("*"))
+                && (subTypeEquals || anySubType || type.subType.equals ("*"))) {
+
+                int fitness = typeEquals? 100 : 0;
+                fitness += subTypeEquals? 10 : 0;
+                fitness += parametersMatch (type, header, paramsStart, end)? 1 : 0;
+                if (fitness > bestFitness) {
+                    bestFitness = fitness;
+                    bestQuality = quality (header, paramsStart, end);
+                }
+            }
+        }
+
+        return ((long)bestFitness << 32) | (floatToRawIntBits (bestQuality) & 0xFFFFFFFFL);
+    }
+
+    private static int fitness (long score) {
+        return (int)(score >> 32);
+    }
+
+    private static float quality (long score) {
+        return intBitsToFloat ((int)score);
+    }
+
+    /** Checks if any parameter of a type has the same value in a media range. */
+    private static boolean parametersMatch (
+        MediaType type, CharSequence header, int paramsStart, int end) {
+
+        final String[] parameters = type.parameters;
+        for (int ii = 0; ii < parameters.length; ii += 2) {
+            final long value = parameter (header, paramsStart, end, parameters[ii]);
+            if (value != -1 && regionEquals (
+                header, (int)(value >> 32), (int)value, parameters[ii + 1]))
+                return true;
         }
 
-        for (String s : supported) {
-            FitnessAndQuality fitnessAndQuality = fitnessAndQualityParsed (s, parseResults);
-            fitnessAndQuality.mimeType = s;
-            weightedMatches.add (fitnessAndQuality);
+        return false;
+    }
+
+    /** Returns the 'q' parameter of a media range (like {@link #parseMediaRange(String)}). */
+    private static float quality (CharSequence header, int paramsStart, int end) {
+        final long value = parameter (header, paramsStart, end, "q");
+        final int valueStart = (int)(value >> 32);
+        final int valueEnd = (int)value;
+        if (value == -1 || valueStart == valueEnd)
+            return 1;
+
+        final float quality = toFloat (header, valueStart, valueEnd, 1);
+        return quality < 0 || quality > 1? 1 : toFloat (header, valueStart, valueEnd, 0);
+    }
+
+    /**
+     * Finds the value of a parameter in a media range (if repeated, the last one).
+     *
+     * @return The start (high 32 bits) and end (low 32 bits) of the trimmed value or -1.
+     */
+    private static long parameter (CharSequence header, int from, int to, String name) {
+        long result = -1;
+
+        for (int ii = from, next; ii < to; ii = next) {
+            next = indexOf (header, ';', ii + 1, to);
+            final int separator = parameterSeparator (header, ii + 1, next);
+            if (separator == -1)
+                continue;
+
+            final int nameStart = trimStart (header, ii + 1, separator);
+            final int nameEnd = trimEnd (header, nameStart, separator);
+            if (regionEquals (header, nameStart, nameEnd, name)) {
+                final int valueStart =
+                    trimStart (header, separator + 1, parameterEnd (header, separator + 1, next));
+                final int valueEnd =
+                    trimEnd (header, valueStart, parameterEnd (header, separator + 1, next));
+                result = ((long)valueStart << 32) | valueEnd;
+            }
         }
-        Collections.sort (weightedMatches);
 
-        FitnessAndQuality lastOne = weightedMatches.get (weightedMatches.size () - 1);
-        return Float.compare (lastOne.quality, 0) != 0? lastOne.mimeType : NO_MIME_TYPE;
+        return result;
+    }
+
+    /** Returns the index of a character or 'to' if it is not found. */
+    static int indexOf (CharSequence text, char character, int from, int to) {
+        for (int ii = from; ii < to; ii++)
+            if (text.charAt (ii) == character)
+                return ii;
+
+        return to;
+    }
+
+    /** Skips leading white space (as {@link String#trim()}). */
+    static int trimStart (CharSequence text, int from, int to) {
+        while (from < to && text.charAt (from) <= ' ')
+            from++;
+        return from;
+    }
+
+    /** Skips trailing white space (as {@link String#trim()}). */
+    static int trimEnd (CharSequence text, int from, int to) {
+        while (to > from && text.charAt (to - 1) <= ' ')
+            to--;
+        return to;
+    }
+
+    /** Checks for a single '*' (sent by Java URLConnection, it is handled as '*' + '/*'). */
+    static boolean isAny (CharSequence text, int from, int to) {
+        return to - from == 1 && text.charAt (from) == '*';
+    }
+
+    /** A type without '/' or without anything but '/' after it can not be split. */
+    static boolean isMalformed (CharSequence text, int slash, int to) {
+        for (int ii = slash + 1; ii < to; ii++)
+            if (text.charAt (ii) != '/')
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the index of the '=' of a parameter or -1 if it has none or many (as splitting
+     * with {@link String#split(String)}, trailing '=' are ignored).
+     */
+    static int parameterSeparator (CharSequence text, int from, int to) {
+        final int end = parameterEnd (text, from, to);
+        final int separator = indexOf (text, '=', from, end);
+        return separator != end && indexOf (text, '=', separator + 1, end) == end?
+            separator : -1;
+    }
+
+    static int parameterEnd (CharSequence text, int from, int to) {
+        while (to > from && text.charAt (to - 1) == '=')
+            to--;
+        return to;
+    }
+
+    private static boolean regionEquals (CharSequence text, int from, int to, String value) {
+        if (to - from != value.length ())
+            return false;
+
+        for (int ii = from; ii < to; ii++)
+            if (text.charAt (ii) != value.charAt (ii - from))
+                return false;
+
+        return true;
     }
 
     private static float toFloat (final String str, final float defaultValue) {
@@ -231,5 +467,40 @@ final class MimeParse {
         }
     }
 
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9
+    };
+
+    /**
+     * Parses plain decimals (as '0.5') in place, other formats are parsed by
+     * {@link Float#parseFloat(String)}.
+     */
+    private static float toFloat (
+        final CharSequence text, final int from, final int to, final float defaultValue) {
+
+        long mantissa = 0;
+        int digits = 0;
+        int point = -1;
+        for (int ii = from; ii < to; ii++) {
+            final char character = text.charAt (ii);
+            if (character >= '0' && character <= '9' && digits < 9) {
+                mantissa = mantissa * 10 + (character - '0');
+                digits++;
+            }
+            else if (character == '.' && point == -1) {
+                point = ii;
+            }
+            else {
+                return toFloat (text.subSequence (from, to).toString (), defaultValue);
+            }
+        }
+
+        if (digits == 0)
+            return defaultValue;
+
+        final int decimals = point == -1? 0 : to - point - 1;
+        return (float)(mantissa / POWERS_OF_TEN[decimals]);
+    }
+
     private MimeParse () { throw new IllegalStateException (); }
 }
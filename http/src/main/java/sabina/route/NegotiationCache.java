@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static java.lang.Integer.getInteger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import sabina.Route;
+
+/**
+ * Results of the content negotiation (the route chosen for an 'Accept' header among a group
+ * of routes). Only a few distinct 'Accept' headers are usually received, so the parsing and
+ * scoring of each one is done once per group.
+ *
+ * <p>The cache is bounded: when it is full, new results replace random entries (so headers
+ * sent by a client once can not fill it and keep the common ones out). Its size is set with the
+ * 'sabina.negotiation.cache' system property (1024 entries by default, 0 disables it). It is
+ * cleared when routes are added.
+ *
+ * <p>Hits and misses are counted to help sizing it.
+ */
+public final class NegotiationCache {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final Object NONE = new Object ();
+
+    private static final class Key {
+        final Object group;
+        final String header;
+        final int hash;
+
+        Key (Object group, String header) {
+            this.group = group;
+            this.header = header;
+            this.hash = 31 * group.hashCode () + header.hashCode ();
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof Key))
+                return false;
+
+            final Key key = (Key)other;
+            return hash == key.hash && header.equals (key.header) && group.equals (key.group);
+        }
+
+        @Override public int hashCode () {
+            return hash;
+        }
+    }
+
+    private final Map<Key, Object> results = new ConcurrentHashMap<> ();
+    /** Keys stored in the cache by slot (a new key replaces the key of its slot). */
+    private final AtomicReferenceArray<Key> slots;
+    /** Slots used (while the cache is filled, the free ones are taken in order). */
+    private final AtomicInteger used = new AtomicInteger ();
+    private final LongAdder hits = new LongAdder ();
+    private final LongAdder misses = new LongAdder ();
+    private final int capacity;
+
+    NegotiationCache () {
+        this (getInteger ("sabina.negotiation.cache", DEFAULT_CAPACITY));
+    }
+
+    NegotiationCache (int capacity) {
+        this.capacity = Math.max (capacity, 0);
+        this.slots = new AtomicReferenceArray<> (this.capacity);
+    }
+
+    /**
+     * Returns the route chosen for a group and an 'Accept' header, computing it if it is not
+     * cached.
+     *
+     * @param group The routes to choose from (its equals and hashCode identify it).
+     * @param header The 'Accept' header.
+     * @param negotiation Function choosing the route (may return null).
+     * @param <G> The type of the group.
+     * @return The chosen route or null if no route accepts the header.
+     */
+    <G> Route negotiate (G group, String header, BiFunction<G, String, Route> negotiation) {
+        final Key key = new Key (group, header);
+        final Object cached = results.get (key);
+
+        if (cached != null) {
+            hits.increment ();
+            return cached == NONE? null : (Route)cached;
+        }
+
+        misses.increment ();
+        final Route route = negotiation.apply (group, header);
+        if (capacity > 0)
+            store (key, route == null? NONE : route);
+        return route;
+    }
+
+    /**
+     * Stores a result in a free slot or, if there is none, in a random one (removing the result
+     * it had). Under contention the map may have a few more entries than slots for a moment.
+     */
+    private void store (Key key, Object result) {
+        final int free = used.get () < capacity? used.getAndIncrement () : capacity;
+        final int slot = free < capacity? free : ThreadLocalRandom.current ().nextInt (capacity);
+
+        results.put (key, result);
+        final Key evicted = slots.getAndSet (slot, key);
+        if (evicted != null && !evicted.equals (key))
+            results.remove (evicted);
+    }
+
+    void clear () {
+        results.clear ();
+        for (int ii = 0; ii < capacity; ii++)
+            slots.set (ii, null);
+        used.set (0);
+    }
+
+    /**
+     * @return The number of negotiations resolved from the cache.
+     */
+    public long hits () {
+        return hits.sum ();
+    }
+
+    /**
+     * @return The number of negotiations computed (not found in the cache).
+     */
+    public long misses () {
+        return misses.sum ();
+    }
+
+    /**
+     * @return The number of cached results.
+     */
+    public int size () {
+        return results.size ();
+    }
+
+    /**
+     * @return The maximum number of cached results.
+     */
+    public int capacity () {
+        return capacity;
+    }
+}
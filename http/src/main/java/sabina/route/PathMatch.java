@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static sabina.HttpMethod.*;
+
+import java.util.*;
+
+import sabina.HttpMethod;
+import sabina.Route;
+
+/**
+ * The routes of all methods matching a requested path. A path is matched once and the route
+ * for the request method is chosen from here (with
+ * {@link RouteMatcher#findTarget(HttpMethod, PathMatch, String)}).
+ *
+ * <p>It also tells which methods are allowed for the path (to answer OPTIONS requests and to
+ * tell a wrong method from a missing route). HEAD is allowed if GET is, and OPTIONS is
+ * allowed if there is any route.
+ */
+public final class PathMatch {
+    /** 'Allow' header values by methods mask (filled when needed). */
+    private static final String[] ALLOW = new String[1 << HttpMethod.values ().length];
+
+    private static int bit (HttpMethod method) {
+        return 1 << method.ordinal ();
+    }
+
+    private static String allow (int methods) {
+        String allow = ALLOW[methods];
+        if (allow == null) {
+            final StringJoiner joiner = new StringJoiner (", ");
+            for (HttpMethod method : HttpMethod.values ())
+                if ((methods & bit (method)) != 0)
+                    joiner.add (method.name ());
+
+            allow = joiner.toString ();
+            ALLOW[methods] = allow;
+        }
+        return allow;
+    }
+
+    final String path;
+    /** Segments of the path (null if they were not needed to match it). */
+    final int[] segments;
+    /** Matching routes of all methods, in registration order. */
+    private final List<Route> routes;
+    /** Methods of the routes (one bit by method ordinal). */
+    private final int methods;
+    /** Routes by method (null if they are not precomputed). */
+    private final Map<HttpMethod, List<Route>> targets;
+
+    /**
+     * @param path The requested path.
+     * @param segments The path segments (may be null).
+     * @param routes The matching routes in registration order.
+     * @param precompute True to split the routes by method once (for shared instances).
+     */
+    PathMatch (String path, int[] segments, List<Route> routes, boolean precompute) {
+        this.path = path;
+        this.segments = segments;
+        this.routes = routes;
+
+        int mask = 0;
+        for (Route route : routes)
+            mask |= bit (route.method);
+        this.methods = mask;
+
+        if (precompute) {
+            targets = new EnumMap<> (HttpMethod.class);
+            for (Route route : routes)
+                targets.computeIfAbsent (route.method, it -> new ArrayList<> ()).add (route);
+            targets.replaceAll ((method, list) -> Collections.unmodifiableList (list));
+            allow (allowed ());
+        }
+        else {
+            targets = null;
+        }
+    }
+
+    /**
+     * @param method The request method.
+     * @return The routes of the method in registration order.
+     */
+    List<Route> targets (HttpMethod method) {
+        final int bit = bit (method);
+        if ((methods & bit) == 0)
+            return AbstractRouteMatcher.EMPTY;
+
+        if (targets != null)
+            return targets.get (method);
+
+        if (methods == bit)
+            return routes;
+
+        final List<Route> result = new ArrayList<> (routes.size ());
+        for (Route route : routes)
+            if (route.method == method)
+                result.add (route);
+        return result;
+    }
+
+    /**
+     * @return True if no route (of any method) matches the path.
+     */
+    public boolean isEmpty () {
+        return methods == 0;
+    }
+
+    /**
+     * @param method The request method.
+     * @return True if the path accepts the method.
+     */
+    public boolean allows (HttpMethod method) {
+        return (allowed () & bit (method)) != 0;
+    }
+
+    /**
+     * @return The value of the 'Allow' header for this path (empty if there are no routes).
+     */
+    public String allow () {
+        return allow (allowed ());
+    }
+
+    private int allowed () {
+        if (methods == 0)
+            return 0;
+
+        final int head = (methods & bit (GET)) != 0? bit (HEAD) : 0;
+        return methods | head | bit (OPTIONS);
+    }
+}
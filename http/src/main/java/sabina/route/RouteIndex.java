@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.route;
+
+import java.util.List;
+
+import sabina.HttpMethod;
+import sabina.Route;
+
+/**
+ * Structure used by a route matcher to find the routes matching a path. It is built from all
+ * the routes at once and never modified, so it can be read by any thread without locks.
+ */
+interface RouteIndex {
+    /**
+     * Returns the routes for a method matching the path, in registration order.
+     *
+     * @param httpMethod the http method
+     * @param path the requested path
+     * @param segments the path segments (see {@link RoutePattern#segments(String)})
+     *
+     * @return the matching routes (never null)
+     */
+    List<Route> findTargetsForRequestedRoute (HttpMethod httpMethod, String path, int[] segments);
+
+    /**
+     * Returns the routes of all methods (filters excluded) matching the path, in registration
+     * order.
+     *
+     * @param path the requested path
+     * @param segments the path segments (see {@link RoutePattern#segments(String)})
+     *
+     * @return the matching routes (never null)
+     */
+    List<Route> findRoutesForRequestedPath (String path, int[] segments);
+}
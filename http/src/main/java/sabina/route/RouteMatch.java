@@ -14,17 +14,51 @@
 
 package sabina.route;
 
+import java.util.List;
+import java.util.Map;
+
 import sabina.Route;
 
 /**
+ * A route matched by a request. It keeps the segments found in the requested path while
+ * matching, so parameters are extracted without splitting the path again.
+ *
  * @author Per Wendel
  */
 public final class RouteMatch {
     public final Route entry;
     public final String requestURI;
 
+    /** Requested path segments as [start, end) pairs (computed when needed if null). */
+    private int[] segments;
+
     public RouteMatch (Route entry, String path) {
+        this (entry, path, null);
+    }
+
+    RouteMatch (Route entry, String path, int[] segments) {
         this.entry = entry;
         this.requestURI = path;
+        this.segments = segments;
+    }
+
+    int[] segments () {
+        if (segments == null)
+            segments = RoutePattern.segments (requestURI);
+        return segments;
+    }
+
+    /**
+     * @return The route parameters (keys are lower case and start with ':').
+     */
+    public Map<String, String> params () {
+        return entry.pattern.params (requestURI, segments ());
+    }
+
+    /**
+     * @return The values matched by the route wildcards.
+     */
+    public List<String> splat () {
+        return entry.pattern.splat (requestURI, segments ());
     }
 }
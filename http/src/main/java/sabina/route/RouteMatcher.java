@@ -48,5 +48,72 @@ public interface RouteMatcher {
 
     List<RouteMatch> findTargets (HttpMethod httpMethod, String path, String acceptType);
 
+    /**
+     * Finds the routes of all methods (filters excluded) matching a path. The path is matched
+     * once, the route for each method is chosen later.
+     *
+     * @param path The requested path.
+     * @return The matching routes and the methods they allow.
+     */
+    PathMatch findRoutes (String path);
+
+    /**
+     * Chooses the route for a method and accept type among the routes matching a path.
+     *
+     * @param httpMethod The request method.
+     * @param routes The routes matching the path (see {@link #findRoutes(String)}).
+     * @param acceptType The accept type.
+     * @return The route handling the request or null if there is none.
+     */
+    RouteMatch findTarget (HttpMethod httpMethod, PathMatch routes, String acceptType);
+
+    /**
+     * Finds all the routes of a method accepting a type among the routes matching a path.
+     * Used to continue with the next route when one passes a request.
+     *
+     * @param httpMethod The request method.
+     * @param routes The routes matching the path (see {@link #findRoutes(String)}).
+     * @param acceptType The accept type.
+     * @return The routes in registration order.
+     */
+    List<RouteMatch> findTargets (HttpMethod httpMethod, PathMatch routes, String acceptType);
+
+    /**
+     * Removes the routes (or filters) of a method and path (for all accept types). It can be
+     * called while requests are being handled.
+     *
+     * @param httpMethod The method of the routes.
+     * @param path The path of the routes (as it was registered).
+     * @return True if any route was removed.
+     */
+    boolean removeRoute (HttpMethod httpMethod, String path);
+
+    /**
+     * Compiles the routes (filter chains, static routes, etc.). Called when the server starts,
+     * after that, route changes compile a new table before it replaces the current one (so
+     * routes can be added or removed while requests are being handled).
+     */
+    void freeze ();
+
+    /**
+     * Finds the filters to run for a request.
+     *
+     * @param filterMethod BEFORE or AFTER.
+     * @param target The route that handles the request (null if there is none).
+     * @param path The requested path.
+     * @param acceptType The accept type.
+     *
+     * @return The filters in the order they have to be executed.
+     */
+    List<RouteMatch> findFilters (
+        HttpMethod filterMethod, RouteMatch target, String path, String acceptType);
+
+    /**
+     * Returns the cache of the routes chosen for each 'Accept' header.
+     *
+     * @return The negotiation cache (with its hit and miss counters).
+     */
+    NegotiationCache negotiationCache ();
+
     Fault<? extends Exception> findHandler(Class<? extends Exception> exceptionClass);
 }
@@ -14,9 +14,14 @@
 
 package sabina.route;
 
+import static java.lang.System.getProperty;
+
 /**
  * RouteMatcherFactory
  *
+ * <p>The matcher is selected with the 'sabina.router' system property: 'simple' (default)
+ * checks routes one by one, 'tree' compiles them into a segment tree.
+ *
  * @author Per Wendel
  */
 public final class RouteMatcherFactory {
@@ -25,6 +30,17 @@ public final class RouteMatcherFactory {
     }
 
     public static synchronized RouteMatcher create () {
-        return new SimpleRouteMatcher ();
+        return create (getProperty ("sabina.router", "simple"));
+    }
+
+    public static synchronized RouteMatcher create (String router) {
+        switch (router) {
+            case "simple":
+                return new SimpleRouteMatcher ();
+            case "tree":
+                return new TreeRouteMatcher ();
+            default:
+                throw new IllegalStateException ("Unknown router: " + router);
+        }
     }
 }
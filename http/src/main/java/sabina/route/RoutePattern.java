@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static sabina.Request.convertRouteToList;
+
+import java.util.*;
+
+/**
+ * A route path split in segments once (when the route is created).
+ *
+ * <p>Requested paths are not split in strings. They are represented by the offsets of their
+ * segments: an array with the start and end index of each one (empty segments are skipped).
+ * Matching and parameter extraction work on those offsets.
+ */
+public final class RoutePattern {
+    private static final int[] NO_SEGMENTS = new int[0];
+
+    /**
+     * Returns the segments of a path as pairs of [start, end) indexes.
+     *
+     * @param path The path to split.
+     * @return An array with two elements (start and end) for each segment.
+     */
+    static int[] segments (final String path) {
+        final int length = path.length ();
+
+        int count = 0;
+        for (int ii = 0; ii < length; ii++)
+            if (path.charAt (ii) != '/' && (ii == 0 || path.charAt (ii - 1) == '/'))
+                count++;
+
+        if (count == 0)
+            return NO_SEGMENTS;
+
+        final int[] segments = new int[count * 2];
+        int segment = 0;
+        int start = -1;
+        for (int ii = 0; ii <= length; ii++) {
+            if (ii == length || path.charAt (ii) == '/') {
+                if (start != -1) {
+                    segments[segment++] = start;
+                    segments[segment++] = ii;
+                    start = -1;
+                }
+            }
+            else if (start == -1) {
+                start = ii;
+            }
+        }
+        return segments;
+    }
+
+    final String[] segments;
+    /** Lower case parameter names (null for segments that are not parameters). */
+    private final String[] parameters;
+    /** True if the route path ends with '*' (it matches longer paths). */
+    final boolean wildcard;
+    final boolean trailingSlash;
+
+    public RoutePattern (final String path) {
+        final List<String> parts = convertRouteToList (path);
+
+        segments = parts.toArray (new String[parts.size ()]);
+        parameters = new String[segments.length];
+        for (int ii = 0; ii < segments.length; ii++)
+            if (segments[ii].startsWith (":"))
+                parameters[ii] = segments[ii].toLowerCase ();
+
+        wildcard = path.endsWith ("*");
+        trailingSlash = path.endsWith ("/");
+    }
+
+    /**
+     * @param index Segment index.
+     * @return True if the segment is a parameter or a wildcard (it matches any value).
+     */
+    boolean isAny (final int index) {
+        return parameters[index] != null || segments[index].equals ("*");
+    }
+
+    /**
+     * @return True if the pattern has no parameters nor wildcards (it only matches its path).
+     */
+    boolean isStatic () {
+        if (wildcard)
+            return false;
+
+        for (int ii = 0; ii < segments.length; ii++)
+            if (isAny (ii))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Checks if a requested path matches this pattern (Sinatra's rules).
+     *
+     * @param path The requested path.
+     * @param offsets The path segments (as returned by {@link #segments(String)}).
+     * @return True if the path matches.
+     */
+    boolean matches (final String path, final int[] offsets) {
+        final int pathSize = offsets.length / 2;
+        final int size = segments.length;
+        final boolean pathSlash = path.endsWith ("/");
+
+        // One and not both ends with slash
+        if (!wildcard && pathSlash != trailingSlash)
+            return false;
+
+        if (size == pathSize)
+            return matchesSegments (path, offsets, size);
+
+        if (!wildcard)
+            return false;
+
+        // Wildcards match the empty segment after a trailing slash ('/foo/' for '/foo/*')
+        if (pathSize == size - 1 && pathSlash)
+            return isAny (size - 1) && matchesSegments (path, offsets, size - 1);
+
+        return size < pathSize && matchesSegments (path, offsets, size);
+    }
+
+    private boolean matchesSegments (final String path, final int[] offsets, final int count) {
+        for (int ii = 0; ii < count; ii++) {
+            if (isAny (ii))
+                continue;
+
+            final String segment = segments[ii];
+            final int start = offsets[ii * 2];
+            final int length = offsets[ii * 2 + 1] - start;
+            if (length != segment.length () || !path.regionMatches (start, segment, 0, length))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param path The requested path.
+     * @param offsets The path segments (as returned by {@link #segments(String)}).
+     * @return The route parameters (keys are lower case and start with ':').
+     */
+    Map<String, String> params (final String path, final int[] offsets) {
+        final int count = Math.min (segments.length, offsets.length / 2);
+        final Map<String, String> params = new HashMap<> ();
+
+        for (int ii = 0; ii < count; ii++)
+            if (parameters[ii] != null)
+                params.put (parameters[ii], path.substring (offsets[ii * 2], offsets[ii * 2 + 1]));
+
+        return unmodifiableMap (params);
+    }
+
+    /**
+     * @param path The requested path.
+     * @param offsets The path segments (as returned by {@link #segments(String)}).
+     * @return The values of the wildcard segments. The last one takes the rest of the path.
+     */
+    List<String> splat (final String path, final int[] offsets) {
+        final int pathSize = offsets.length / 2;
+        final int size = segments.length;
+        final List<String> splat = new ArrayList<> ();
+
+        for (int ii = 0; ii < size && ii < pathSize; ii++) {
+            if (!segments[ii].equals ("*"))
+                continue;
+
+            final int start = offsets[ii * 2];
+            if (pathSize != size && ii == size - 1) {
+                final StringBuilder splatParam = new StringBuilder ();
+                for (int jj = ii; jj < pathSize; jj++) {
+                    if (jj > ii)
+                        splatParam.append ('/');
+                    splatParam.append (path, offsets[jj * 2], offsets[jj * 2 + 1]);
+                }
+                splat.add (splatParam.toString ());
+            }
+            else {
+                splat.add (path.substring (start, offsets[ii * 2 + 1]));
+            }
+        }
+
+        return unmodifiableList (splat);
+    }
+}
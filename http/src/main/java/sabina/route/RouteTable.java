@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.route;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import sabina.Route;
+
+/**
+ * Immutable snapshot of the routes and all the structures compiled from them: the matcher
+ * index, the filter chains and the static routes table.
+ *
+ * <p>Route changes build a new table that replaces the previous one, requests in progress
+ * keep using the table they started with.
+ */
+final class RouteTable {
+    static final RouteTable EMPTY = new RouteTable (new ArrayList<> (), null);
+
+    /** All the routes and filters in registration order. */
+    final List<Route> routes;
+    final RouteIndex index;
+    /** Filter chains by route. */
+    final Map<Route, FilterChain> chains;
+    final FilterChain notFoundChain;
+    /** Routes without parameters nor wildcards by path. */
+    final StaticRoutes staticRoutes;
+
+    /**
+     * Compiles a table.
+     *
+     * @param routes All the routes and filters in registration order (not copied).
+     * @param index The index built for the routes (null to build nothing else).
+     */
+    RouteTable (List<Route> routes, RouteIndex index) {
+        this.routes = unmodifiableList (routes);
+        this.index = index;
+
+        if (index == null) {
+            chains = null;
+            notFoundChain = null;
+            staticRoutes = null;
+            return;
+        }
+
+        final List<Route> filters = new ArrayList<> ();
+        for (Route route : routes)
+            if (route.isFilter ())
+                filters.add (route);
+
+        chains = new IdentityHashMap<> ();
+        for (Route route : routes)
+            if (!route.isFilter ())
+                chains.put (route, FilterChain.compile (route, filters));
+
+        notFoundChain = FilterChain.compile (null, filters);
+        staticRoutes = StaticRoutes.compile (routes);
+    }
+
+    /** @return True if the table has only the routes (it is not compiled). */
+    boolean isPending () {
+        return index == null;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import java.util.*;
+
+import sabina.Route;
+
+/**
+ * Hash table (by path) of the routes without parameters nor wildcards, computed once when
+ * the routes are frozen.
+ *
+ * <p>Each path is mapped to all the routes matching it (of any method, including the routes
+ * with parameters that also match), in registration order. So, a request to one of these
+ * paths is resolved with one lookup, and the result is the same a full scan would find.
+ *
+ * <p>Paths are stored in their canonical form ('/a/b', not '//a/b' nor 'a/b'). Requests in
+ * other forms are not found and are matched against the patterns.
+ */
+final class StaticRoutes {
+    /**
+     * Builds the table for a set of routes (filters are ignored).
+     *
+     * @param routes All the routes, in registration order.
+     * @return The static routes table.
+     */
+    static StaticRoutes compile (List<Route> routes) {
+        final Map<Route, Integer> order = new IdentityHashMap<> ();
+        final Map<String, List<Route>> statics = new HashMap<> ();
+        final List<Route> dynamics = new ArrayList<> ();
+
+        for (Route route : routes) {
+            if (route.isFilter ())
+                continue;
+
+            order.put (route, order.size ());
+            if (route.pattern.isStatic ())
+                statics.computeIfAbsent (path (route.pattern), it -> new ArrayList<> ())
+                    .add (route);
+            else
+                dynamics.add (route);
+        }
+
+        final Map<String, PathMatch> matches = new HashMap<> ();
+        for (Map.Entry<String, List<Route>> entry : statics.entrySet ()) {
+            final String path = entry.getKey ();
+            final int[] segments = RoutePattern.segments (path);
+            final List<Route> targets = entry.getValue ();
+
+            for (Route route : dynamics)
+                if (route.pattern.matches (path, segments))
+                    targets.add (route);
+
+            targets.sort ((a, b) -> Integer.compare (order.get (a), order.get (b)));
+            matches.put (path, new PathMatch (path, null, targets, true));
+        }
+
+        return new StaticRoutes (matches);
+    }
+
+    /** The request path matched by a static pattern (without empty segments). */
+    private static String path (RoutePattern pattern) {
+        final StringBuilder path = new StringBuilder ();
+        for (String segment : pattern.segments)
+            path.append ('/').append (segment);
+
+        if (pattern.segments.length == 0 || pattern.trailingSlash)
+            path.append ('/');
+
+        return path.toString ();
+    }
+
+    private final Map<String, PathMatch> routes;
+
+    private StaticRoutes (Map<String, PathMatch> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Returns the routes matching a path, if it is the path of a static route.
+     *
+     * @param path The requested path.
+     * @return The routes matching the path, or null if the path is not in the table (it has
+     *  to be matched against the patterns).
+     */
+    PathMatch find (String path) {
+        return routes.get (path);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static sabina.HttpMethod.AFTER;
+import static sabina.HttpMethod.BEFORE;
+import static sabina.Route.ALL_PATHS;
+
+import java.util.*;
+
+import sabina.HttpMethod;
+import sabina.Route;
+
+/**
+ * Route matcher that compiles the routes into a segment tree (one for the routes of all
+ * methods and one for each kind of filter). Lookups walk the requested path once instead of
+ * checking every route.
+ *
+ * <p>Each node has static children (indexed by segment) and one 'any' child shared by
+ * ':param' and '*' segments. Routes whose path ends with '*' also match longer paths (the
+ * rest goes to the splat). Matches are returned in registration order, so the precedence
+ * is the same as in {@link SimpleRouteMatcher}.
+ */
+final class TreeRouteMatcher extends AbstractRouteMatcher {
+    /**
+     * Routes placed in the same place of a tree, in registration order (they are added in
+     * that order). Lookups matching one group return its routes as they are, the routes of
+     * several groups are merged by their orders (without sorting them).
+     */
+    private static final class Group {
+        private final List<Route> list = new ArrayList<> ();
+        /** Unmodifiable view shared by the lookups. */
+        final List<Route> routes = Collections.unmodifiableList (list);
+        /** Registration order of each route. */
+        int[] orders = new int[0];
+
+        void add (Route route, int order) {
+            list.add (route);
+            orders = Arrays.copyOf (orders, orders.length + 1);
+            orders[orders.length - 1] = order;
+        }
+
+        boolean isEmpty () {
+            return list.isEmpty ();
+        }
+    }
+
+    /** Groups matching a path (the first one is kept apart, as it is often the only one). */
+    private static final class Matches {
+        Group first;
+        List<Group> others;
+
+        void add (Group group) {
+            if (group.isEmpty ())
+                return;
+
+            if (first == null) {
+                first = group;
+            }
+            else {
+                if (others == null)
+                    others = new ArrayList<> ();
+                others.add (group);
+            }
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<> ();
+        /** Child for ':param' and '*' segments. */
+        Node any;
+        /** Routes ending in this node that must consume the whole path (without '/' at the end). */
+        final Group routes = new Group ();
+        /** Routes ending in this node that must consume the whole path (with '/' at the end). */
+        final Group slashRoutes = new Group ();
+        /** Routes ending in this node with a trailing '*' (they match longer paths). */
+        final Group wildcards = new Group ();
+    }
+
+    /** The trees built for a set of routes. */
+    private static final class Index implements RouteIndex {
+        /** Routes of all methods (without filters). */
+        private final Node routes = new Node ();
+        /** Filters by method (BEFORE and AFTER). */
+        private final Map<HttpMethod, Node> trees = new EnumMap<> (HttpMethod.class);
+        /** Filters without path (they match every request). */
+        private final Map<HttpMethod, Group> globals = new EnumMap<> (HttpMethod.class);
+
+        Index (List<Route> targets) {
+            for (int ii = 0; ii < targets.size (); ii++)
+                add (targets.get (ii), ii);
+        }
+
+        private void add (Route target, int order) {
+            if (target.isFilter () && target.path.equals (ALL_PATHS)) {
+                globals.computeIfAbsent (target.method, it -> new Group ()).add (target, order);
+                return;
+            }
+
+            final RoutePattern pattern = target.pattern;
+            Node node = target.isFilter ()?
+                trees.computeIfAbsent (target.method, it -> new Node ()) : routes;
+            for (int ii = 0; ii < pattern.segments.length; ii++) {
+                if (pattern.isAny (ii)) {
+                    if (node.any == null)
+                        node.any = new Node ();
+                    node = node.any;
+                }
+                else {
+                    node = node.children.computeIfAbsent (pattern.segments[ii], it -> new Node ());
+                }
+            }
+
+            if (pattern.wildcard)
+                node.wildcards.add (target, order);
+            else if (pattern.trailingSlash)
+                node.slashRoutes.add (target, order);
+            else
+                node.routes.add (target, order);
+        }
+
+        @Override public List<Route> findTargetsForRequestedRoute (
+            HttpMethod httpMethod, String path, int[] segments) {
+
+            return httpMethod == BEFORE || httpMethod == AFTER?
+                find (trees.get (httpMethod), globals.get (httpMethod), null, path, segments) :
+                find (routes, null, httpMethod, path, segments);
+        }
+
+        @Override public List<Route> findRoutesForRequestedPath (String path, int[] segments) {
+            return find (routes, null, null, path, segments);
+        }
+    }
+
+    @Override RouteIndex index (List<Route> routes) {
+        return new Index (routes);
+    }
+
+    /**
+     * Collects the routes of a tree matching a path.
+     *
+     * @param method If not null, only the routes of this method are returned.
+     */
+    private static List<Route> find (
+        Node tree, Group global, HttpMethod method, String path, int[] segments) {
+
+        if (tree == null && global == null)
+            return EMPTY;
+
+        final Matches matches = new Matches ();
+        if (global != null)
+            matches.add (global);
+
+        if (tree != null)
+            collect (tree, path, segments, 0, path.endsWith ("/"), matches);
+
+        if (matches.first == null)
+            return EMPTY;
+
+        if (matches.others == null && method == null)
+            return matches.first.routes;
+
+        return merge (matches, method);
+    }
+
+    /** Merges the routes of the groups by their registration order. */
+    private static List<Route> merge (Matches matches, HttpMethod method) {
+        final List<Group> groups = new ArrayList<> ();
+        groups.add (matches.first);
+        if (matches.others != null)
+            groups.addAll (matches.others);
+
+        final int[] positions = new int[groups.size ()];
+        final List<Route> result = new ArrayList<> ();
+        while (true) {
+            int next = -1;
+            int order = Integer.MAX_VALUE;
+            for (int ii = 0; ii < positions.length; ii++) {
+                final Group group = groups.get (ii);
+                if (positions[ii] < group.orders.length && group.orders[positions[ii]] < order) {
+                    next = ii;
+                    order = group.orders[positions[ii]];
+                }
+            }
+
+            if (next == -1)
+                return result;
+
+            final Route route = groups.get (next).routes.get (positions[next]++);
+            if (method == null || route.method == method)
+                result.add (route);
+        }
+    }
+
+    private static void collect (
+        Node node, String path, int[] segments, int index, boolean trailingSlash,
+        Matches found) {
+
+        // Wildcard routes match when all their segments are consumed (even with path left)
+        found.add (node.wildcards);
+
+        if (index == segments.length / 2) {
+            found.add (trailingSlash? node.slashRoutes : node.routes);
+
+            // '/foo/' matches '/foo/*' (an empty last segment)
+            if (trailingSlash && node.any != null)
+                found.add (node.any.wildcards);
+
+            return;
+        }
+
+        if (!node.children.isEmpty ()) {
+            final String segment = path.substring (segments[index * 2], segments[index * 2 + 1]);
+            final Node child = node.children.get (segment);
+            if (child != null)
+                collect (child, path, segments, index + 1, trailingSlash, found);
+        }
+
+        if (node.any != null)
+            collect (node.any, path, segments, index + 1, trailingSlash, found);
+    }
+}
@@ -14,37 +14,82 @@
 
 package sabina.server;
 
+import static java.lang.String.format;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
 import sabina.route.RouteMatcher;
 
 /**
+ * Creates backends by name with the {@link BackendProvider}s found in the class path. The
+ * 'jdk' backend is included, the others are in their own modules (ie: 'http-undertow').
+ *
  * @author Per Wendel
  */
 public final class BackendFactory {
+    /** Providers are looked up the first time a backend is created. */
+    private static final class Providers {
+        static final Map<String, BackendProvider> PROVIDERS = new HashMap<> ();
+
+        static {
+            final ClassLoader loader = BackendFactory.class.getClassLoader ();
+            for (BackendProvider provider : ServiceLoader.load (BackendProvider.class, loader))
+                PROVIDERS.putIfAbsent (provider.name (), provider);
+        }
+    }
+
     private BackendFactory () {
         throw new IllegalStateException ();
     }
 
-    private static Backend createJetty (RouteMatcher matcher, boolean hasMultipleHandler) {
-        return new JettyServer (createFilter ("jetty", matcher, hasMultipleHandler));
+    /**
+     * @return 'undertow' if its module is in the class path, the only backend found besides
+     * 'jdk' if there is one, or 'jdk' (included in this module) otherwise.
+     */
+    public static String defaultBackend () {
+        return defaultBackend (Providers.PROVIDERS.keySet ());
     }
 
-    private static MatcherFilter createFilter (
-        String backend, RouteMatcher matcher, boolean hasMultipleHandler) {
-        return new MatcherFilter (matcher, backend, hasMultipleHandler);
-    }
+    /**
+     * @param backends The names of the backends found.
+     * @return The backend used if none is selected (see {@link #defaultBackend()}).
+     */
+    static String defaultBackend (Set<String> backends) {
+        if (backends.contains ("undertow"))
+            return "undertow";
 
-    private static Backend createUndertow (RouteMatcher matcher, boolean hasMultipleHandler) {
-        return new UndertowServer (createFilter ("undertow", matcher, hasMultipleHandler));
+        String other = null;
+        for (String backend : backends) {
+            if (backend.equals ("jdk"))
+                continue;
+            if (other != null)
+                return "jdk";
+            other = backend;
+        }
+        return other == null? "jdk" : other;
     }
 
     public static Backend create (String backend, RouteMatcher matcher, boolean multipleHandlers) {
-        switch (backend) {
-            case "jetty":
-                return createJetty (matcher, multipleHandlers);
-            case "undertow":
-                return createUndertow (matcher, multipleHandlers);
-            default:
-                throw new IllegalStateException ();
-        }
+        return create (backend, matcher, multipleHandlers, null);
+    }
+
+    /**
+     * @param executor Executor to run the handlers (null to run them in the backend threads).
+     * @throws IllegalStateException If there is no provider for the backend.
+     */
+    public static Backend create (
+        String backend, RouteMatcher matcher, boolean multipleHandlers, Executor executor) {
+
+        final BackendProvider provider = Providers.PROVIDERS.get (backend);
+        if (provider == null)
+            throw new IllegalStateException (format (
+                "Backend '%s' not found (available: %s), add its module to the class path",
+                backend, Providers.PROVIDERS.keySet ()));
+
+        return provider.create (matcher, multipleHandlers, executor);
     }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import java.util.concurrent.Executor;
+
+import sabina.route.RouteMatcher;
+
+/**
+ * Creates the backends of one engine. Providers are found with {@link java.util.ServiceLoader}
+ * (listed in 'META-INF/services/sabina.server.BackendProvider'), so engines are optional
+ * modules: the classes of an engine are not loaded unless it is selected.
+ *
+ * <p>Providers must be light (they are all instantiated to be looked up by name), the engine
+ * classes should only be referenced from {@link #create(RouteMatcher, boolean, Executor)}.
+ */
+public interface BackendProvider {
+    /**
+     * @return The name used to select the backend (ie: 'sabina.backend' system property).
+     */
+    String name ();
+
+    /**
+     * @param matcher Routes of the server.
+     * @param multipleHandlers True if requests not routed are left to other handlers.
+     * @param executor Executor to run the handlers (null to run them in the backend threads).
+     * @return A new backend (not started).
+     */
+    Backend create (RouteMatcher matcher, boolean multipleHandlers, Executor executor);
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import sabina.Constant;
+
+/**
+ * Writes handler results to the response. Binary results (byte[], ByteBuffer, InputStream,
+ * ReadableByteChannel and Path) are copied to the output as they are (without building a
+ * String). {@link Constant} bodies are written from their pre-encoded bytes (or their shared
+ * buffer, see {@link Exchange#writeShared(ByteBuffer)}). Any other object
+ * is written as its 'toString' encoded in UTF-8.
+ *
+ * <p>'Content-Length' is set when the size is known (arrays, buffers, files and file
+ * channels). Streams and channels are closed after being written. Buffers, channels and files
+ * go through the exchange's output channel (files are transferred without copying them to the
+ * heap), unless the exchange sends streams, channels and files itself (see
+ * {@link Exchange#transfer(java.io.Closeable)}).
+ */
+final class Bodies {
+    static final String DEFAULT_CONTENT_TYPE = "text/html; charset=utf-8";
+    static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * @param body The response body (not null).
+     * @return True if the body is written as bytes (not as text).
+     */
+    static boolean isBinary (Object body) {
+        return body instanceof Constant
+            || body instanceof byte[]
+            || body instanceof ByteBuffer
+            || body instanceof InputStream
+            || body instanceof ReadableByteChannel
+            || body instanceof Path;
+    }
+
+    /**
+     * Sets the content type (if it was not set by the handler) and writes the body.
+     *
+     * @param body The response body (not null).
+     * @param response The response to write to (not committed).
+     * @throws IOException If the body can not be read or the response written.
+     */
+    static void write (Object body, Exchange response) throws IOException {
+        if (response.responseType () == null)
+            response.responseType (contentType (body));
+
+        if (body instanceof Constant)
+            write ((Constant)body, response);
+        else if (body instanceof byte[])
+            write ((byte[])body, response);
+        else if (body instanceof ByteBuffer)
+            write ((ByteBuffer)body, response);
+        else if (body instanceof InputStream)
+            write ((InputStream)body, response);
+        else if (body instanceof ReadableByteChannel)
+            write ((ReadableByteChannel)body, response);
+        else if (body instanceof Path)
+            write ((Path)body, response);
+        else
+            response.output ().write (body.toString ().getBytes (UTF_8));
+    }
+
+    private static String contentType (Object body) throws IOException {
+        if (body instanceof Path) {
+            final String type = Files.probeContentType ((Path)body);
+            return type == null? BINARY_CONTENT_TYPE : type;
+        }
+        if (body instanceof Constant)
+            return ((Constant)body).contentType;
+        return isBinary (body)? BINARY_CONTENT_TYPE : DEFAULT_CONTENT_TYPE;
+    }
+
+    private static void write (Constant body, Exchange response) throws IOException {
+        response.responseLength (body.length);
+        if (!response.writeShared (body.buffer ()))
+            body.writeTo (response.output ());
+    }
+
+    private static void write (byte[] body, Exchange response) throws IOException {
+        response.responseLength (body.length);
+        response.output ().write (body);
+    }
+
+    private static void write (ByteBuffer body, Exchange response)
+        throws IOException {
+
+        // Read from a duplicate to leave the buffer untouched (it may be shared)
+        final ByteBuffer buffer = body.duplicate ();
+        response.responseLength (buffer.remaining ());
+
+        if (buffer.hasArray ()) {
+            response.output ().write (
+                buffer.array (), buffer.arrayOffset () + buffer.position (), buffer.remaining ());
+        }
+        else {
+            final WritableByteChannel out = response.outputChannel ();
+            while (buffer.hasRemaining ())
+                out.write (buffer);
+        }
+    }
+
+    private static void write (InputStream body, Exchange response)
+        throws IOException {
+
+        if (response.transfer (body))
+            return;
+
+        try (InputStream in = body) {
+            final OutputStream out = response.output ();
+            final byte[] chunk = new byte[BUFFER_SIZE];
+            for (int read = in.read (chunk); read != -1; read = in.read (chunk))
+                out.write (chunk, 0, read);
+        }
+    }
+
+    private static void write (ReadableByteChannel body, Exchange response)
+        throws IOException {
+
+        if (response.transfer (body))
+            return;
+
+        try (ReadableByteChannel in = body) {
+            if (in instanceof FileChannel) {
+                write ((FileChannel)in, response);
+                return;
+            }
+
+            // Heap buffer: direct ones are slow to allocate and only freed by the GC (NIO
+            // channels copy heap buffers through a temporary direct buffer cached per thread)
+            final WritableByteChannel out = response.outputChannel ();
+            final ByteBuffer chunk = ByteBuffer.allocate (BUFFER_SIZE);
+            while (in.read (chunk) != -1) {
+                chunk.flip ();
+                while (chunk.hasRemaining ())
+                    out.write (chunk);
+                chunk.clear ();
+            }
+        }
+    }
+
+    /** Writes the file from its current position (the channel is not closed). */
+    private static void write (FileChannel file, Exchange response) throws IOException {
+        final long size = file.size ();
+        response.responseLength (size - file.position ());
+
+        final WritableByteChannel out = response.outputChannel ();
+        long position = file.position ();
+        while (position < size) {
+            final long sent = file.transferTo (position, size - position, out);
+            if (sent <= 0)
+                break; // The file was truncated
+            position += sent;
+        }
+    }
+
+    private static void write (Path body, Exchange response) throws IOException {
+        final FileChannel file = FileChannel.open (body, READ);
+        if (response.transfer (file))
+            return;
+
+        try (FileChannel in = file) {
+            write (in, response);
+        }
+    }
+
+    private Bodies () {
+        throw new IllegalStateException ();
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright © 2011 Per Wendel. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Logger.getLogger;
+import static sabina.HttpMethod.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+import sabina.*;
+import sabina.route.PathMatch;
+import sabina.route.RouteMatch;
+import sabina.route.RouteMatcher;
+
+/**
+ * Matches requests with filters and routes, runs them and writes the response. It works on
+ * {@link Exchange} instances, so it is shared by all backends (each one adapts its requests).
+ */
+final class Dispatcher {
+    private static final Logger LOG = getLogger (Dispatcher.class.getName ());
+
+    private static final int
+        SC_NOT_FOUND = 404,
+        SC_METHOD_NOT_ALLOWED = 405,
+        SC_INTERNAL_SERVER_ERROR = 500;
+
+    private static final String
+        ACCEPT_TYPE_REQUEST_MIME_HEADER = "Accept",
+        INTERNAL_ERROR = "<html><body><h2>500 Internal Error</h2></body></html>",
+        NOT_FOUND =
+            "<html><body>" +
+                "<h2>404 Not found</h2>The requested route [%s] has not been mapped in Sabina" +
+                "</body></html>",
+        METHOD_NOT_ALLOWED =
+            "<html><body>" +
+                "<h2>405 Method not allowed</h2>The requested route [%s] does not accept %s" +
+                "</body></html>";
+
+    /** Methods allowed in requests (filters are not request methods). */
+    private static final Map<String, HttpMethod> METHODS = new HashMap<> ();
+
+    static {
+        for (HttpMethod method : HttpMethod.values ())
+            if (method != BEFORE && method != AFTER)
+                METHODS.put (method.name (), method);
+    }
+
+    /**
+     * Routes matching a request. Backends choosing the thread of a request by its route (see
+     * {@link #isBlocking(Target)}) match it once and pass the result to the dispatcher.
+     */
+    static final class Target {
+        /** Null if the method is not supported. */
+        final HttpMethod method;
+        final PathMatch routes;
+        /** Route of the request method (null if there is none). */
+        final RouteMatch match;
+
+        private Target (HttpMethod method, PathMatch routes, RouteMatch match) {
+            this.method = method;
+            this.routes = routes;
+            this.match = match;
+        }
+    }
+
+    final RouteMatcher routeMatcher;
+    final String backend;
+    final boolean hasOtherHandlers;
+    /** Runs the handlers out of the backend threads (null to run them in the request thread). */
+    final Executor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param routeMatcher The route matcher.
+     * @param backend The name of the backend.
+     * @param hasOtherHandlers If true, do nothing if request is not consumed by Sabina in order
+     * to let others handlers process the request.
+     * @param executor If not null, handlers are run in this executor and the request is
+     * suspended meanwhile (as if they returned a CompletionStage).
+     */
+    Dispatcher (
+        RouteMatcher routeMatcher, String backend, boolean hasOtherHandlers, Executor executor) {
+
+        this.routeMatcher = routeMatcher;
+        this.backend = backend;
+        this.hasOtherHandlers = hasOtherHandlers;
+        this.executor = executor;
+    }
+
+    /**
+     * Matches the path of a request once for all methods, and the route of its method.
+     *
+     * @param exchange The request.
+     * @return The routes matching the request.
+     */
+    Target target (Exchange exchange) {
+        final HttpMethod httpMethod = METHODS.get (exchange.method ());
+        final PathMatch routes = routeMatcher.findRoutes (exchange.uri ());
+        final RouteMatch match = httpMethod == null? null : routeMatcher.findTarget (
+            httpMethod, routes, exchange.header (ACCEPT_TYPE_REQUEST_MIME_HEADER));
+        return new Target (httpMethod, routes, match);
+    }
+
+    /**
+     * Tells if handling a request may block. Event loop backends have to offload those
+     * requests to a worker thread.
+     *
+     * @param target The routes matching the request (see {@link #target(Exchange)}).
+     * @return False if the request has a route with a non blocking handler (its filters
+     * must not block either).
+     */
+    boolean isBlocking (Target target) {
+        return executor != null || target.match == null || target.match.entry.blocking;
+    }
+
+    /**
+     * Handles a request: runs the filters and the route matching it and writes the response.
+     *
+     * @param exchange The request and its response.
+     * @return False if the request was not consumed and is left to other handlers.
+     * @throws IOException If the response can not be written.
+     */
+    boolean dispatch (final Exchange exchange) throws IOException {
+        return dispatch (exchange, null);
+    }
+
+    /**
+     * Handles a request already matched (see {@link #dispatch(Exchange)}).
+     *
+     * @param exchange The request and its response.
+     * @param matched The routes matching the request (null to match them here).
+     * @return False if the request was not consumed and is left to other handlers.
+     * @throws IOException If the response can not be written.
+     */
+    boolean dispatch (final Exchange exchange, Target matched) throws IOException {
+        boolean loggable = LOG.isLoggable (FINE);
+        long t = loggable? currentTimeMillis () : 0;
+
+        final String uri = exchange.uri ();
+        final String httpMethodStr = exchange.method ();
+        final String acceptType = exchange.header (ACCEPT_TYPE_REQUEST_MIME_HEADER);
+
+        // A String, a binary body (see Bodies) or a CompletionStage (asynchronous handlers)
+        Object bodyContent = null;
+        // Shared by all handlers, created when the first one is found (constants do not use it)
+        Request request = null;
+
+        try {
+            // The path is matched once for all methods (null method if it is not supported)
+            final Target matches = matched != null? matched : target (exchange);
+            final HttpMethod httpMethod = matches.method;
+            final PathMatch routes = matches.routes;
+            final RouteMatch match = matches.match;
+
+            // HEAD requests without route are answered (without body) if GET is mapped
+            final RouteMatch getMatch = match == null && httpMethod == HEAD?
+                routeMatcher.findTarget (GET, routes, acceptType) : null;
+            final RouteMatch target = match != null? match : getMatch;
+
+            final List<RouteMatch> before =
+                routeMatcher.findFilters (BEFORE, target, uri, acceptType);
+            request = request (request, before, exchange);
+            bodyContent = onFilter (before, request, bodyContent);
+
+            if (match == null && bodyContent == null)
+                bodyContent = handleWithoutRoute (
+                    uri, httpMethodStr, httpMethod, routes, getMatch, exchange);
+
+            if (match != null && match.entry != null) {
+                if (match.entry.constant == null)
+                    request = request == null?
+                        Request.create (match, exchange) : Request.bind (request, match);
+
+                bodyContent = handleTargetRoute (
+                    exchange, request, bodyContent, match, routes, acceptType, null);
+            }
+
+            if (bodyContent instanceof CompletionStage) {
+                suspend (
+                    (CompletionStage<?>)bodyContent, target, exchange, request, uri, acceptType);
+                return true;
+            }
+
+            bodyContent = onAfter (target, exchange, request, uri, acceptType, bodyContent);
+        }
+        catch (HaltException e) {
+            bodyContent = halt (e, exchange);
+        }
+
+        // If redirected and content is null set to empty string to not throw NotConsumedException
+//        if (bodyContent == null && res.isRedirected())
+//            bodyContent = "";
+        // TODO Check this scenario
+        // TODO add header to know if has been redirected (ie: __REDIRECTED__)
+
+        final boolean handled = respond (bodyContent, uri, exchange, hasOtherHandlers);
+
+        // TODO Merge logs and take care of method flow to log always
+        if (loggable) {
+            LOG.fine ("httpMethod:" + httpMethodStr + ", uri: " + uri);
+            LOG.fine ("Time for request: " + (currentTimeMillis () - t));
+        }
+
+        return handled;
+    }
+
+    /**
+     * Writes the response body (or the 'not found' page if the request was not consumed).
+     *
+     * @param pass If true, requests not consumed are left to other handlers.
+     * @return False if the request was left to other handlers.
+     */
+    private boolean respond (
+        Object bodyContent, String uri, Exchange exchange, boolean pass)
+        throws IOException {
+
+        boolean consumed = bodyContent != null;
+
+        if (!consumed && pass) {
+			if (backend.equals ("undertow"))
+				exchange.status (SC_NOT_FOUND); // TODO Only for Undertow
+            return false;
+        }
+
+        if (!consumed) {
+            exchange.status (SC_NOT_FOUND);
+            bodyContent = format (NOT_FOUND, uri);
+        }
+
+        // Write body content
+        if (!exchange.isCommitted ())
+            Bodies.write (bodyContent, exchange);
+
+        return true;
+    }
+
+    private static Object halt (HaltException e, Exchange exchange) {
+        if (LOG.isLoggable (FINE))
+            LOG.fine ("halt performed");
+        exchange.status (e.statusCode);
+        String haltBody = e.body;
+        return (haltBody != null)? haltBody : "";
+    }
+
+    /**
+     * Releases the container thread until the result of an asynchronous handler is completed.
+     * Then AFTER filters are applied and the response is written (as in synchronous requests).
+     * If the backend does not support asynchronous processing, the result is awaited.
+     *
+     * <p>There is no timeout: handlers should complete their results (ie: failing them if a
+     * downstream service does not answer on time).
+     */
+    private void suspend (
+        CompletionStage<?> result, RouteMatch target, Exchange exchange, Request request,
+        String uri, String acceptType) {
+
+        final boolean suspended = exchange.suspend ();
+
+        final CompletableFuture<?> finished = result.toCompletableFuture ().handle ((body, e) -> {
+            try {
+                resume (body, e, target, exchange, request, uri, acceptType);
+            }
+            catch (Exception ex) {
+                LOG.severe (ex.getMessage ());
+            }
+            finally {
+                if (suspended)
+                    exchange.complete ();
+            }
+            return null;
+        });
+
+        if (!suspended)
+            finished.join ();
+    }
+
+    private void resume (
+        Object body, Throwable error, RouteMatch target, Exchange exchange, Request request,
+        String uri, String acceptType) throws IOException {
+
+        Object bodyContent;
+        try {
+            if (error != null)
+                throw cause (error);
+
+            bodyContent = onAfter (target, exchange, request, uri, acceptType, body);
+        }
+        catch (HaltException e) {
+            bodyContent = halt (e, exchange);
+        }
+        catch (Throwable e) {
+            LOG.severe (e.getMessage ());
+            exchange.status (SC_INTERNAL_SERVER_ERROR);
+            bodyContent = INTERNAL_ERROR;
+        }
+
+        // The request can not be passed to other handlers once it is suspended
+        respond (bodyContent, uri, exchange, false);
+    }
+
+    /**
+     * @return The exception that failed an asynchronous result (without completion wrappers).
+     */
+    private static Throwable cause (Throwable error) {
+        Throwable cause = error;
+        while (
+            (cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause () != null)
+            cause = cause.getCause ();
+        return cause;
+    }
+
+    /**
+     * Answers requests without a route for their method: HEAD (if GET is mapped), OPTIONS
+     * (with the methods allowed for the path) and methods not allowed (405). No handler is
+     * invoked.
+     *
+     * @return The response body or null if the path is not mapped.
+     */
+    private String handleWithoutRoute (
+        String uri, String methodName, HttpMethod method, PathMatch routes, RouteMatch getMatch,
+        Exchange exchange) {
+
+        if (getMatch != null)
+            return "";
+
+        if (routes.isEmpty ())
+            return null;
+
+        if (method == OPTIONS) {
+            exchange.setHeader ("Allow", routes.allow ());
+            return "";
+        }
+
+        if (method == null || !routes.allows (method)) {
+            exchange.status (SC_METHOD_NOT_ALLOWED);
+            exchange.setHeader ("Allow", routes.allow ());
+            return format (METHOD_NOT_ALLOWED, uri, methodName);
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs the route handling a request. If it passes the request (see
+     * {@link Request#pass()}), the next route accepting it is run (the routes matching the
+     * path are not searched again).
+     *
+     * @param request The request bound to the route (null for constant routes).
+     * @param next The routes left after a pass (null if no route has passed the request).
+     */
+    private Object handleTargetRoute (
+        Exchange exchange, Request request, Object aBodyContent, RouteMatch aMatch,
+        PathMatch routes, String acceptType, Iterator<RouteMatch> next) {
+
+        final Route aTarget = aMatch.entry;
+        try {
+            Object result = null;
+            if (aTarget.constant != null) {
+                exchange.responseType (aTarget.constant.contentType);
+                result = aTarget.constant;
+            }
+            else if (!aTarget.isFilter ()) {
+                result = executor == null? aTarget.handle (request) : dispatch (aTarget, request);
+            }
+            if (result instanceof CompletionStage) {
+                // Exceptions of asynchronous handlers are handled when they complete
+                final Object previousBody = aBodyContent;
+                return ((CompletionStage<?>)result).handle ((value, error) -> {
+                    if (error == null)
+                        return value != null? value : previousBody;
+
+                    final Throwable cause = cause (error);
+                    if (cause instanceof PassException)
+                        return pass (
+                            exchange, request, previousBody, aMatch, routes, acceptType, next);
+                    if (cause instanceof HaltException)
+                        throw (HaltException)cause;
+                    if (!(cause instanceof Exception))
+                        throw new CompletionException (cause);
+
+                    return handleException ((Exception)cause, request, exchange, previousBody);
+                }).thenCompose (Dispatcher::stage);
+            }
+            if (result != null) {
+                aBodyContent = result;
+            }
+        }
+        catch (HaltException hEx) {
+            throw hEx;
+        }
+        catch (PassException e) {
+            return pass (exchange, request, aBodyContent, aMatch, routes, acceptType, next);
+        }
+        catch (Exception e) {
+            aBodyContent = handleException (e, request, exchange, aBodyContent);
+        }
+
+        return aBodyContent;
+    }
+
+    /**
+     * Runs the route after the one passing a request. The first route may have been chosen by
+     * content negotiation, so the others are tried in registration order.
+     *
+     * @return The body of the next route or the previous body if no route is left.
+     */
+    private Object pass (
+        Exchange exchange, Request request, Object aBodyContent, RouteMatch passed,
+        PathMatch routes, String acceptType, Iterator<RouteMatch> next) {
+
+        Iterator<RouteMatch> remaining = next;
+        if (remaining == null) {
+            final List<RouteMatch> targets =
+                routeMatcher.findTargets (passed.entry.method, routes, acceptType);
+            targets.removeIf (it -> it.entry == passed.entry);
+            remaining = targets.iterator ();
+        }
+
+        if (!remaining.hasNext ())
+            return aBodyContent;
+
+        final RouteMatch target = remaining.next ();
+        return handleTargetRoute (exchange, Request.bind (request, target), aBodyContent, target,
+            routes, acceptType, remaining);
+    }
+
+    /**
+     * Runs a handler in the executor. If the handler returns a CompletionStage itself, it is
+     * waited for.
+     */
+    private CompletionStage<Object> dispatch (Route target, Request request) {
+        return supplyAsync (() -> target.handle (request), executor)
+            .thenCompose (Dispatcher::stage);
+    }
+
+    /** @return The result if it is a CompletionStage or a stage completed with it. */
+    @SuppressWarnings ("unchecked")
+    private static CompletionStage<Object> stage (Object result) {
+        return result instanceof CompletionStage?
+            (CompletionStage<Object>)result : completedFuture (result);
+    }
+
+    @SuppressWarnings ("unchecked")
+    private Object handleException (
+        Exception e, Request request, Exchange exchange, Object aBodyContent) {
+
+        Fault<Exception> handler = (Fault<Exception>)routeMatcher.findHandler (e.getClass ());
+        if (handler != null && request != null) {
+            handler.handle (e, request);
+        }
+        else {
+            LOG.severe (e.getMessage ());
+            exchange.status (SC_INTERNAL_SERVER_ERROR);
+            aBodyContent = INTERNAL_ERROR;
+        }
+        return aBodyContent;
+    }
+
+    private Object onAfter (
+        RouteMatch target, Exchange exchange, Request request, String uri, String acceptType,
+        Object bodyContent) {
+
+        final List<RouteMatch> after = routeMatcher.findFilters (AFTER, target, uri, acceptType);
+        return onFilter (after, request (request, after, exchange), bodyContent);
+    }
+
+    /**
+     * @return The given request or a new one if it is null and there are filters to run.
+     */
+    private static Request request (Request request, List<RouteMatch> filters, Exchange exchange) {
+        return request != null || filters.isEmpty ()?
+            request : Request.create (filters.get (0), exchange);
+    }
+
+    /**
+     * Runs filters (BEFORE or AFTER) binding the request to each one of them.
+     *
+     * @return The body set by the last filter changing it (or the given one if none did).
+     */
+    private static Object onFilter (
+        List<RouteMatch> filters, Request request, Object bodyContent) {
+
+        for (RouteMatch filterMatch : filters) {
+            filterMatch.entry.handle (Request.bind (request, filterMatch));
+
+            final String bodyAfterFilter = request.response.body ();
+            if (bodyAfterFilter != null)
+                bodyContent = bodyAfterFilter;
+        }
+
+        return bodyContent;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.nio.channels.Channels.newChannel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An HTTP request and its response as seen by the framework. Each backend implements it on
+ * top of its own request objects ({@link sabina.Request} and {@link sabina.Response} only use
+ * this interface).
+ *
+ * <p>Methods returning values from the request return null if the value is not present.
+ *
+ * <p>Servlet containers are one adapter ({@link ServletExchange}), engines without servlets
+ * implement it directly (ie: the native Undertow backend). Routing does not depend on any of
+ * them.
+ */
+public interface Exchange {
+    /*
+     * Request
+     */
+    String method ();
+    String scheme ();
+    String host ();
+    int port ();
+    String protocol ();
+    /** @return The client IP address. */
+    String ip ();
+
+    /** @return The requested path (without query string). */
+    String uri ();
+    /** @return The complete URL (without query string). */
+    String url ();
+    String pathInfo ();
+    String servletPath ();
+    String contextPath ();
+    String queryString ();
+    String queryParam (String name);
+    Set<String> queryParams ();
+
+    String header (String name);
+    Collection<String> headerNames ();
+    /** @return Request cookies (name to value). */
+    Map<String, String> cookies ();
+
+    String contentType ();
+    /** @return The length of the request body (-1 if it is not known). */
+    long contentLength ();
+    InputStream input () throws IOException;
+
+    /**
+     * Backends with channel based IO should override it to avoid the stream wrapper.
+     *
+     * @return The request body as a channel.
+     */
+    default ReadableByteChannel inputChannel () throws IOException {
+        return newChannel (input ());
+    }
+
+    /** Attributes of the request (shared by the filters and the route handling it). */
+    Object attribute (String name);
+    void attribute (String name, Object value);
+    Set<String> attributeNames ();
+
+    /**
+     * @param create True to create a session if the request has none.
+     * @return The request session (null if there is none and 'create' is false).
+     */
+    ExchangeSession session (boolean create);
+
+    /*
+     * Response
+     */
+    void status (int status);
+    String responseType ();
+    void responseType (String contentType);
+    /** @param length The length of the response body in bytes. */
+    void responseLength (long length);
+    void addHeader (String name, String value);
+    void setHeader (String name, String value);
+    void addDateHeader (String name, long date);
+    void addCookie (String path, String name, String value, int maxAge, boolean secure);
+
+    /** Sends a temporary redirect (302) to a location. */
+    void redirect (String location) throws IOException;
+    /** Sends an error status without body. */
+    void sendError (int status) throws IOException;
+
+    /** @return True if the status and headers were already sent. */
+    boolean isCommitted ();
+    OutputStream output () throws IOException;
+
+    /**
+     * Used to write buffers and files. Backends with channel based IO should override it to
+     * avoid copying buffers to the heap.
+     *
+     * @return The response body as a channel (writes block until the buffer is consumed).
+     */
+    default WritableByteChannel outputChannel () throws IOException {
+        return newChannel (output ());
+    }
+
+    /**
+     * Lets backends writing buffers send a read only buffer shared by many responses (ie: the
+     * body of a {@link sabina.Constant}) as it is, instead of copying it to the output.
+     *
+     * @param shared The buffer to send (it must not be modified).
+     * @return False if the body has to be written to the output (the default).
+     * @throws IOException If the buffer can not be written.
+     */
+    default boolean writeShared (ByteBuffer shared) throws IOException {
+        return false;
+    }
+
+    /**
+     * Lets backends that buffer the response send streams, channels and files as the
+     * connection accepts them. If the body is taken, the exchange closes it when it is sent.
+     *
+     * @param body An InputStream or a ReadableByteChannel (file channels are sent from their
+     * position).
+     * @return False if the body has to be written to the output (the default).
+     * @throws IOException If the body can not be read.
+     */
+    default boolean transfer (Closeable body) throws IOException {
+        return false;
+    }
+
+    /**
+     * Keeps the exchange open after the current thread returns (until {@link #complete()} is
+     * called).
+     *
+     * @return False if the backend does not support asynchronous processing.
+     */
+    boolean suspend ();
+
+    /** Finishes a suspended exchange (after its response is written). */
+    void complete ();
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import java.util.Set;
+
+/**
+ * The session of an {@link Exchange} (implemented by each backend). {@link sabina.Session}
+ * delegates on it.
+ */
+public interface ExchangeSession {
+    String id ();
+    Object attribute (String name);
+    void attribute (String name, Object value);
+    void removeAttribute (String name);
+    Set<String> attributeNames ();
+    long creationTime ();
+    long lastAccessedTime ();
+    int maxInactiveInterval ();
+    void maxInactiveInterval (int interval);
+    void invalidate ();
+    boolean isNew ();
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.ZoneOffset.UTC;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsExchange;
+
+/**
+ * Exchange of the JDK backend. The response body is buffered and sent with the status and
+ * headers when the exchange ends, unless its length is set before writing it (then it is
+ * written directly to the connection).
+ *
+ * <p>Query parameters are taken from the query string only (form bodies are not parsed).
+ */
+final class JdkExchange implements Exchange {
+    private static final int SC_FOUND = 302;
+
+    /** Discards the body of HEAD responses. */
+    private static final OutputStream DISCARD = new OutputStream () {
+        @Override public void write (int b) {}
+        @Override public void write (byte[] b, int off, int len) {}
+    };
+
+    private final HttpExchange exchange;
+    private final MemorySessions sessions;
+    private final AtomicBoolean finished = new AtomicBoolean ();
+
+    private int status = 200;
+    private long length = -1;
+    private ByteArrayOutputStream body;
+    private OutputStream output;
+    private Map<String, List<String>> query;
+    private Map<String, String> cookies;
+    private Map<String, Object> attributes;
+    private ExchangeSession session;
+    private volatile boolean suspended;
+
+    JdkExchange (HttpExchange exchange, MemorySessions sessions) {
+        this.exchange = exchange;
+        this.sessions = sessions;
+    }
+
+    @Override public String method () { return exchange.getRequestMethod (); }
+    @Override public String protocol () { return exchange.getProtocol (); }
+
+    @Override public String scheme () {
+        return exchange instanceof HttpsExchange? "https" : "http";
+    }
+
+    @Override public String host () {
+        final String host = header ("Host");
+        if (host == null)
+            return exchange.getLocalAddress ().getHostString ();
+
+        final int colon = host.lastIndexOf (':');
+        return colon == -1 || host.endsWith ("]")? host : host.substring (0, colon);
+    }
+
+    @Override public int port () { return exchange.getLocalAddress ().getPort (); }
+
+    @Override public String ip () {
+        final InetSocketAddress address = exchange.getRemoteAddress ();
+        return address.getAddress ().getHostAddress ();
+    }
+
+    /** The path is not decoded (like in the other backends), parameters are decoded later. */
+    @Override public String uri () { return exchange.getRequestURI ().getRawPath (); }
+
+    @Override public String url () {
+        return scheme () + "://" + host () + ":" + port () + uri ();
+    }
+
+    @Override public String pathInfo () { return uri (); }
+    @Override public String servletPath () { return ""; }
+    @Override public String contextPath () { return ""; }
+
+    @Override public String queryString () { return exchange.getRequestURI ().getRawQuery (); }
+
+    @Override public String queryParam (String name) {
+        final List<String> values = query ().get (name);
+        return values == null? null : values.get (0);
+    }
+
+    @Override public Set<String> queryParams () { return query ().keySet (); }
+
+    @Override public String header (String name) {
+        return exchange.getRequestHeaders ().getFirst (name);
+    }
+
+    @Override public Collection<String> headerNames () {
+        return exchange.getRequestHeaders ().keySet ();
+    }
+
+    @Override public Map<String, String> cookies () {
+        if (cookies == null) {
+            cookies = new HashMap<> ();
+            final List<String> headers = exchange.getRequestHeaders ().get ("Cookie");
+            if (headers != null)
+                for (String header : headers)
+                    for (String cookie : header.split (";")) {
+                        final int equals = cookie.indexOf ('=');
+                        if (equals != -1)
+                            cookies.put (
+                                cookie.substring (0, equals).trim (),
+                                unquote (cookie.substring (equals + 1).trim ()));
+                    }
+        }
+        return cookies;
+    }
+
+    @Override public String contentType () { return header ("Content-Type"); }
+
+    @Override public long contentLength () {
+        final String contentLength = header ("Content-Length");
+        return contentLength == null? -1 : Long.parseLong (contentLength);
+    }
+
+    @Override public InputStream input () { return exchange.getRequestBody (); }
+
+    @Override public Object attribute (String name) {
+        return attributes == null? null : attributes.get (name);
+    }
+
+    @Override public void attribute (String name, Object value) {
+        if (attributes == null)
+            attributes = new HashMap<> ();
+        attributes.put (name, value);
+    }
+
+    @Override public Set<String> attributeNames () {
+        return attributes == null? new HashSet<> () : new HashSet<> (attributes.keySet ());
+    }
+
+    @Override public ExchangeSession session (boolean create) {
+        if (session == null)
+            session = sessions.get (cookies ().get (MemorySessions.COOKIE));
+
+        if (session == null && create) {
+            session = sessions.create ();
+            addCookie ("/", MemorySessions.COOKIE, session.id (), -1, scheme ().equals ("https"));
+        }
+
+        return session;
+    }
+
+    @Override public void status (int status) { this.status = status; }
+    @Override public String responseType () { return responseHeaders ().getFirst ("Content-Type"); }
+
+    @Override public void responseType (String type) {
+        responseHeaders ().set ("Content-Type", type);
+    }
+
+    /** The length is sent by the server when the headers are written. */
+    @Override public void responseLength (long length) { this.length = length; }
+
+    @Override public void addHeader (String name, String value) {
+        responseHeaders ().add (name, value);
+    }
+
+    @Override public void setHeader (String name, String value) {
+        responseHeaders ().set (name, value);
+    }
+
+    @Override public void addDateHeader (String name, long date) {
+        addHeader (name, RFC_1123_DATE_TIME.format (Instant.ofEpochMilli (date).atZone (UTC)));
+    }
+
+    @Override public void addCookie (
+        String path, String name, String value, int maxAge, boolean secure) {
+
+        final StringBuilder cookie = new StringBuilder (name).append ('=').append (value);
+        if (path != null && !path.isEmpty ())
+            cookie.append ("; Path=").append (path);
+        if (maxAge >= 0)
+            cookie.append ("; Max-Age=").append (maxAge);
+        if (secure)
+            cookie.append ("; Secure");
+        addHeader ("Set-Cookie", cookie.toString ());
+    }
+
+    @Override public void redirect (String location) {
+        status = SC_FOUND;
+        setHeader ("Location", location);
+    }
+
+    @Override public void sendError (int status) { this.status = status; }
+    @Override public boolean isCommitted () { return output != null || finished.get (); }
+
+    /**
+     * If the length of the body is known, the headers are sent and the body is written to
+     * the connection, otherwise it is buffered.
+     */
+    @Override public OutputStream output () throws IOException {
+        if (output != null)
+            return output;
+
+        if (length < 0) {
+            if (body == null)
+                body = new ByteArrayOutputStream ();
+            return body;
+        }
+
+        sendHeaders (length);
+        output = isHead ()? DISCARD : exchange.getResponseBody ();
+        return output;
+    }
+
+    /**
+     * The response is sent when the suspended exchange is completed.
+     */
+    @Override public boolean suspend () {
+        suspended = true;
+        return true;
+    }
+
+    @Override public void complete () {
+        finish ();
+    }
+
+    /**
+     * Called when the handling thread returns: sends the response unless the exchange was
+     * suspended.
+     */
+    void end () {
+        if (!suspended)
+            finish ();
+    }
+
+    private void finish () {
+        if (!finished.compareAndSet (false, true))
+            return;
+
+        try {
+            if (output == null) {
+                final int size = body == null? 0 : body.size ();
+                sendHeaders (size);
+                if (size > 0 && !isHead ())
+                    body.writeTo (exchange.getResponseBody ());
+            }
+        }
+        catch (IOException e) {
+            // The client closed the connection, it is released when the exchange is closed
+        }
+        finally {
+            exchange.close ();
+        }
+    }
+
+    /**
+     * HEAD responses have the length of the body (set here, the server ignores it), but not
+     * the body.
+     *
+     * <p>The request body is drained first: empty responses are finished when the headers are
+     * sent, and the server closes the connection if the request was not read.
+     */
+    private void sendHeaders (long size) throws IOException {
+        exchange.getRequestBody ().close ();
+
+        if (isHead ()) {
+            responseHeaders ().set ("Content-Length", String.valueOf (size));
+            exchange.sendResponseHeaders (status, -1);
+        }
+        else {
+            // For the JDK server, zero means 'chunked' and -1 'empty body'
+            exchange.sendResponseHeaders (status, size == 0? -1 : size);
+        }
+    }
+
+    private boolean isHead () {
+        return exchange.getRequestMethod ().equals ("HEAD");
+    }
+
+    private Headers responseHeaders () {
+        return exchange.getResponseHeaders ();
+    }
+
+    private Map<String, List<String>> query () {
+        if (query == null) {
+            query = new LinkedHashMap<> ();
+            final String queryString = queryString ();
+            if (queryString != null)
+                for (String parameter : queryString.split ("&")) {
+                    if (parameter.isEmpty ())
+                        continue;
+
+                    final int equals = parameter.indexOf ('=');
+                    final String name = equals == -1? parameter : parameter.substring (0, equals);
+                    final String value = equals == -1? "" : parameter.substring (equals + 1);
+                    query.computeIfAbsent (decode (name), it -> new ArrayList<> ())
+                        .add (decode (value));
+                }
+        }
+        return query;
+    }
+
+    private static String decode (String text) {
+        try {
+            return URLDecoder.decode (text, UTF_8.name ());
+        }
+        catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return text;
+        }
+    }
+
+    private static String unquote (String value) {
+        final int last = value.length () - 1;
+        final boolean quoted = last > 0 && value.charAt (0) == '"' && value.charAt (last) == '"';
+        return quoted? value.substring (1, last) : value;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sessions kept in memory for backends without their own session support. Sessions are
+ * tracked with the {@link #COOKIE} cookie and expire after being inactive for their
+ * 'maxInactiveInterval' (expired sessions are purged, at most once a minute, when new sessions
+ * are created).
+ */
+final class MemorySessions {
+    static final String COOKIE = "JSESSIONID";
+
+    /** Default session timeout in seconds (as in servlet containers). */
+    private static final int DEFAULT_TIMEOUT = 30 * 60;
+    private static final long PURGE_INTERVAL = 60 * 1000L;
+    private static final char[] ID_CHARACTERS =
+        "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ-_".toCharArray ();
+
+    private final class Session implements ExchangeSession {
+        private final String id;
+        private final long creationTime = currentTimeMillis ();
+        private final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<> ();
+        private volatile long lastAccessedTime = creationTime;
+        private volatile int maxInactiveInterval = DEFAULT_TIMEOUT;
+        private volatile boolean isNew = true;
+
+        Session (String id) {
+            this.id = id;
+        }
+
+        @Override public String id () { return id; }
+        @Override public Object attribute (String name) { return attributes.get (name); }
+        @Override public void removeAttribute (String name) { attributes.remove (name); }
+        @Override public long creationTime () { return creationTime; }
+        @Override public long lastAccessedTime () { return lastAccessedTime; }
+        @Override public int maxInactiveInterval () { return maxInactiveInterval; }
+        @Override public void invalidate () { sessions.remove (id); }
+        @Override public boolean isNew () { return isNew; }
+
+        @Override public void attribute (String name, Object value) {
+            if (value == null)
+                attributes.remove (name);
+            else
+                attributes.put (name, value);
+        }
+
+        @Override public Set<String> attributeNames () {
+            return new HashSet<> (attributes.keySet ());
+        }
+
+        @Override public void maxInactiveInterval (int interval) {
+            maxInactiveInterval = interval;
+        }
+
+        boolean isExpired (long now) {
+            return maxInactiveInterval > 0
+                && now - lastAccessedTime > maxInactiveInterval * 1000L;
+        }
+    }
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<> ();
+    private final SecureRandom random = new SecureRandom ();
+    private volatile long nextPurge;
+
+    /**
+     * @param id The session ID sent by the client (may be null).
+     * @return The session with that ID (null if it does not exist or it expired).
+     */
+    ExchangeSession get (String id) {
+        if (id == null)
+            return null;
+
+        final Session session = sessions.get (id);
+        if (session == null)
+            return null;
+
+        final long now = currentTimeMillis ();
+        if (session.isExpired (now)) {
+            sessions.remove (id);
+            return null;
+        }
+
+        session.lastAccessedTime = now;
+        session.isNew = false;
+        return session;
+    }
+
+    /**
+     * @return A new session (the caller sends its ID to the client).
+     */
+    ExchangeSession create () {
+        purge ();
+
+        Session session;
+        do
+            session = new Session (newId ());
+        while (sessions.putIfAbsent (session.id, session) != null);
+
+        return session;
+    }
+
+    void clear () {
+        sessions.clear ();
+    }
+
+    private void purge () {
+        final long now = currentTimeMillis ();
+        if (now < nextPurge)
+            return;
+
+        nextPurge = now + PURGE_INTERVAL;
+        sessions.values ().removeIf (it -> it.isExpired (now));
+    }
+
+    private String newId () {
+        final byte[] bytes = new byte[24];
+        random.nextBytes (bytes);
+
+        final char[] id = new char[bytes.length];
+        for (int ii = 0; ii < bytes.length; ii++)
+            id[ii] = ID_CHARACTERS[bytes[ii] & 0x3F];
+        return new String (id);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.util.Collections.list;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Exchange of the servlet backends (Jetty and Undertow servlets).
+ */
+public final class ServletExchange implements Exchange {
+    private static final class Session implements ExchangeSession {
+        private final HttpSession session;
+
+        Session (HttpSession session) {
+            this.session = session;
+        }
+
+        @Override public String id () { return session.getId (); }
+        @Override public Object attribute (String name) { return session.getAttribute (name); }
+        @Override public void removeAttribute (String name) { session.removeAttribute (name); }
+        @Override public long creationTime () { return session.getCreationTime (); }
+        @Override public long lastAccessedTime () { return session.getLastAccessedTime (); }
+        @Override public int maxInactiveInterval () { return session.getMaxInactiveInterval (); }
+        @Override public void invalidate () { session.invalidate (); }
+        @Override public boolean isNew () { return session.isNew (); }
+
+        @Override public void attribute (String name, Object value) {
+            session.setAttribute (name, value);
+        }
+
+        @Override public Set<String> attributeNames () {
+            return new HashSet<> (list (session.getAttributeNames ()));
+        }
+
+        @Override public void maxInactiveInterval (int interval) {
+            session.setMaxInactiveInterval (interval);
+        }
+    }
+
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private AsyncContext context;
+
+    public ServletExchange (HttpServletRequest request, HttpServletResponse response) {
+        this.request = request;
+        this.response = response;
+    }
+
+    @Override public String method () { return request.getMethod (); }
+    @Override public String scheme () { return request.getScheme (); }
+    @Override public String host () { return request.getServerName (); }
+    @Override public int port () { return request.getServerPort (); }
+    @Override public String protocol () { return request.getProtocol (); }
+    @Override public String ip () { return request.getRemoteAddr (); }
+
+    @Override public String uri () { return request.getRequestURI (); }
+    @Override public String url () { return request.getRequestURL ().toString (); }
+    @Override public String pathInfo () { return request.getPathInfo (); }
+    @Override public String servletPath () { return request.getServletPath (); }
+    @Override public String contextPath () { return request.getContextPath (); }
+    @Override public String queryString () { return request.getQueryString (); }
+    @Override public String queryParam (String name) { return request.getParameter (name); }
+    @Override public Set<String> queryParams () { return request.getParameterMap ().keySet (); }
+
+    @Override public String header (String name) { return request.getHeader (name); }
+
+    @Override public Collection<String> headerNames () {
+        return list (request.getHeaderNames ());
+    }
+
+    @Override public Map<String, String> cookies () {
+        final Map<String, String> result = new HashMap<> ();
+        final Cookie[] cookies = request.getCookies ();
+        if (cookies != null)
+            for (Cookie cookie : cookies)
+                result.put (cookie.getName (), cookie.getValue ());
+        return result;
+    }
+
+    @Override public String contentType () { return request.getContentType (); }
+    @Override public long contentLength () { return request.getContentLengthLong (); }
+    @Override public InputStream input () throws IOException { return request.getInputStream (); }
+
+    @Override public Object attribute (String name) { return request.getAttribute (name); }
+
+    @Override public void attribute (String name, Object value) {
+        request.setAttribute (name, value);
+    }
+
+    @Override public Set<String> attributeNames () {
+        return new HashSet<> (list (request.getAttributeNames ()));
+    }
+
+    @Override public ExchangeSession session (boolean create) {
+        final HttpSession session = request.getSession (create);
+        return session == null? null : new Session (session);
+    }
+
+    @Override public void status (int status) { response.setStatus (status); }
+    @Override public String responseType () { return response.getContentType (); }
+    @Override public void responseType (String type) { response.setContentType (type); }
+    @Override public void responseLength (long length) { response.setContentLengthLong (length); }
+
+    @Override public void addHeader (String name, String value) {
+        response.addHeader (name, value);
+    }
+
+    @Override public void setHeader (String name, String value) {
+        response.setHeader (name, value);
+    }
+
+    @Override public void addDateHeader (String name, long date) {
+        response.addDateHeader (name, date);
+    }
+
+    @Override public void addCookie (
+        String path, String name, String value, int maxAge, boolean secure) {
+
+        final Cookie cookie = new Cookie (name, value);
+        cookie.setPath (path);
+        cookie.setMaxAge (maxAge);
+        cookie.setSecure (secure);
+        response.addCookie (cookie);
+    }
+
+    @Override public void redirect (String location) throws IOException {
+        response.sendRedirect (location);
+    }
+
+    @Override public void sendError (int status) throws IOException {
+        response.sendError (status);
+    }
+
+    @Override public boolean isCommitted () { return response.isCommitted (); }
+
+    @Override public OutputStream output () throws IOException {
+        return response.getOutputStream ();
+    }
+
+    /**
+     * There is no timeout: handlers should complete their results.
+     */
+    @Override public boolean suspend () {
+        if (!request.isAsyncSupported ())
+            return false;
+
+        context = request.startAsync (request, response);
+        context.setTimeout (0);
+        return true;
+    }
+
+    @Override public void complete () {
+        if (context != null)
+            context.complete ();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.lang.System.setProperty;
+
+import java.security.NoSuchAlgorithmException;
+import javax.net.ssl.SSLContext;
+
+/**
+ * SSL contexts for the backends without their own key store handling.
+ *
+ * <p>Failures are thrown as IllegalStateException (the server can not be started).
+ */
+final class SslContexts {
+    static SSLContext create (
+        String keystoreFile, String keystorePassword,
+        String truststoreFile, String truststorePassword) {
+
+        try {
+            if (keystoreFile != null)
+                setProperty ("javax.net.ssl.keyStore", keystoreFile);
+            if (keystorePassword != null)
+                setProperty ("javax.net.ssl.keyStorePassword", keystorePassword);
+            if (truststoreFile != null)
+                setProperty ("javax.net.ssl.trustStore", truststoreFile);
+            if (truststorePassword != null)
+                setProperty ("javax.net.ssl.trustStorePassword", truststorePassword);
+            return SSLContext.getDefault ();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException ("SSL context can not be created", e);
+        }
+    }
+
+    private SslContexts () {
+        throw new IllegalStateException ();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static java.lang.ClassLoader.getSystemClassLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves static files from the class path and from a folder for backends without a static
+ * files handler. As in the Undertow backend, only some extensions are served (other requests
+ * are routed).
+ */
+final class StaticFiles {
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<> ();
+
+    static {
+        CONTENT_TYPES.put (".jpg", "image/jpeg");
+        CONTENT_TYPES.put (".png", "image/png");
+        CONTENT_TYPES.put (".css", "text/css");
+        CONTENT_TYPES.put (".html", "text/html");
+        CONTENT_TYPES.put (".js", "application/javascript");
+    }
+
+    private final String classPathFolder;
+    private final Path folder;
+
+    /**
+     * @param classPathFolder Folder of the class path with static files (may be null).
+     * @param externalFolder Folder of the file system with static files (may be null).
+     */
+    StaticFiles (String classPathFolder, String externalFolder) {
+        this.classPathFolder = classPathFolder == null?
+            null : classPathFolder.replaceAll ("^/+|/+$", "");
+        this.folder = externalFolder == null?
+            null : Paths.get (externalFolder).toAbsolutePath ().normalize ();
+    }
+
+    /**
+     * @return True if the path has the extension of a static file (it may not exist).
+     */
+    boolean accepts (String uri) {
+        return contentType (uri) != null;
+    }
+
+    /**
+     * Writes the file requested by a GET or HEAD request if it exists.
+     *
+     * @return True if the request was answered with a file.
+     * @throws IOException If the file can not be read or the response written.
+     */
+    boolean serve (Exchange exchange) throws IOException {
+        final String method = exchange.method ();
+        if (!method.equals ("GET") && !method.equals ("HEAD"))
+            return false;
+
+        final String uri = exchange.uri ();
+        final String contentType = contentType (uri);
+        if (contentType == null || uri.contains (".."))
+            return false;
+
+        if (classPathFolder != null) {
+            final String name =
+                classPathFolder.isEmpty ()? uri.substring (1) : classPathFolder + uri;
+            final InputStream resource = getSystemClassLoader ().getResourceAsStream (name);
+            if (resource != null) {
+                exchange.responseType (contentType);
+                Bodies.write (resource, exchange);
+                return true;
+            }
+        }
+
+        if (folder != null) {
+            final Path file = folder.resolve (uri.substring (1)).normalize ();
+            if (file.startsWith (folder) && Files.isRegularFile (file)) {
+                exchange.responseType (contentType);
+                Bodies.write (file, exchange);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String contentType (String uri) {
+        final int dot = uri.lastIndexOf ('.');
+        return dot == -1? null : CONTENT_TYPES.get (uri.substring (dot));
+    }
+}
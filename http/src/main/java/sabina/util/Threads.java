@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors to run handlers out of the backend worker threads.
+ *
+ * <p>Virtual threads are looked up by reflection (the code is compiled for Java 8). They are
+ * not replaced by platform threads when they are not available (JDK before 21): an unbounded
+ * pool would start a thread for each blocked request.
+ *
+ * <p>The bounded pools size is taken from the 'sabina.threads' system property (8 threads per
+ * core by default) and their queue size from 'sabina.threads.queue' (1024 by default).
+ */
+public final class Threads {
+    /** Threads of the bounded pools. */
+    public static final int THREADS =
+        Integer.getInteger ("sabina.threads", Runtime.getRuntime ().availableProcessors () * 8);
+    /** Tasks waiting for a thread in the bounded pools. */
+    public static final int QUEUE = Integer.getInteger ("sabina.threads.queue", 1024);
+
+    /**
+     * @return True if the JVM supports virtual threads.
+     */
+    public static boolean virtualThreadsAvailable () {
+        return virtualThreadFactory () != null;
+    }
+
+    /**
+     * Creates an executor starting a virtual thread for each task.
+     *
+     * @param name Prefix of the threads names (not used by virtual threads).
+     * @return An unbounded executor for blocking tasks.
+     * @throws IllegalStateException If virtual threads are not supported.
+     */
+    public static ExecutorService virtualThreads (String name) {
+        final Method factory = virtualThreadFactory ();
+        if (factory == null)
+            throw new IllegalStateException ("Virtual threads not supported (JDK 21+ needed)");
+
+        try {
+            return (ExecutorService)factory.invoke (null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException ("Virtual threads can not be created", e);
+        }
+    }
+
+    /**
+     * Creates a bounded pool of daemon threads with the configured sizes.
+     *
+     * @param name Prefix of the threads names.
+     * @return A bounded executor for blocking tasks.
+     * @see #boundedThreads(String, int, int)
+     */
+    public static ExecutorService boundedThreads (String name) {
+        return boundedThreads (name, THREADS, QUEUE);
+    }
+
+    /**
+     * Creates a pool of daemon threads (created as needed and stopped after a minute idle).
+     * When all threads are busy, tasks wait in a queue. When the queue is full, tasks are
+     * rejected (RejectedExecutionException).
+     *
+     * @param name Prefix of the threads names.
+     * @param threads Maximum number of threads.
+     * @param queue Maximum number of waiting tasks.
+     * @return A bounded executor for blocking tasks.
+     */
+    public static ExecutorService boundedThreads (String name, int threads, int queue) {
+        final AtomicInteger count = new AtomicInteger ();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor (
+            threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<> (queue), task -> {
+                final Thread thread = new Thread (task, name + "-" + count.incrementAndGet ());
+                thread.setDaemon (true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut (true);
+        return executor;
+    }
+
+    private static Method virtualThreadFactory () {
+        try {
+            return Executors.class.getMethod ("newVirtualThreadPerTaskExecutor");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private Threads () {
+        throw new IllegalStateException ();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.testng.annotations.Test;
+import sabina.route.RouteMatcher;
+import sabina.route.RouteMatcherFactory;
+
+public class FaultTest {
+    private static <T extends Exception> Fault<T> fault (Class<T> exception) {
+        return new Fault<> (exception, (e, r) -> {});
+    }
+
+    @Test public void mostSpecificHandlerIsFound () {
+        RouteMatcher matcher = RouteMatcherFactory.create ();
+        Fault<RuntimeException> runtime = fault (RuntimeException.class);
+        matcher.processFault (runtime);
+
+        assertSame (matcher.findHandler (IllegalArgumentException.class), runtime);
+        assertSame (matcher.findHandler (NumberFormatException.class), runtime);
+        assertNull (matcher.findHandler (Exception.class));
+
+        // Handlers registered after a lookup replace the cached results
+        Fault<IllegalArgumentException> illegal = fault (IllegalArgumentException.class);
+        Fault<Exception> exception = fault (Exception.class);
+        matcher.processFault (illegal);
+        matcher.processFault (exception);
+
+        assertSame (matcher.findHandler (NumberFormatException.class), illegal);
+        assertSame (matcher.findHandler (IllegalStateException.class), runtime);
+        assertSame (matcher.findHandler (Exception.class), exception);
+    }
+
+    @Test public void handlersAreResolvedConcurrently () throws Exception {
+        RouteMatcher matcher = RouteMatcherFactory.create ();
+        Fault<RuntimeException> runtime = fault (RuntimeException.class);
+        matcher.processFault (runtime);
+
+        List<Class<? extends Exception>> exceptions = new ArrayList<> ();
+        exceptions.add (IllegalArgumentException.class);
+        exceptions.add (IllegalStateException.class);
+        exceptions.add (UnsupportedOperationException.class);
+        exceptions.add (NumberFormatException.class);
+        exceptions.add (ArithmeticException.class);
+        exceptions.add (Exception.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool (8);
+        try {
+            List<Future<?>> results = new ArrayList<> ();
+            for (int ii = 0; ii < 8; ii++)
+                results.add (executor.submit (() -> {
+                    for (int jj = 0; jj < 10_000; jj++)
+                        for (Class<? extends Exception> type : exceptions) {
+                            Fault<?> expected = type == Exception.class? null : runtime;
+                            if (matcher.findHandler (type) != expected)
+                                throw new IllegalStateException (type.getName ());
+                        }
+                    return null;
+                }));
+
+            for (Future<?> result : results)
+                result.get (30, TimeUnit.SECONDS);
+        }
+        finally {
+            executor.shutdownNow ();
+        }
+    }
+}
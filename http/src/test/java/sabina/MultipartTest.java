@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+import sabina.Multipart.Part;
+
+@Test public class MultipartTest {
+    private static final String BOUNDARY = "----sabina0123";
+
+    /** Reads a few bytes at a time, to test delimiters split between reads. */
+    private static InputStream body (byte[] body) {
+        return new ByteArrayInputStream (body) {
+            @Override public synchronized int read (byte[] b, int off, int len) {
+                return super.read (b, off, Math.min (len, 7));
+            }
+        };
+    }
+
+    private static byte[] multipart (Object... nameAndContent) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream ();
+        body.write ("preamble\r\n".getBytes (UTF_8));
+        for (int ii = 0; ii < nameAndContent.length; ii += 2) {
+            final String name = (String)nameAndContent[ii];
+            final Object content = nameAndContent[ii + 1];
+            final String fileName = content instanceof byte[]? "; filename=\"" + name + "\"" : "";
+            body.write (("--" + BOUNDARY + "\r\n").getBytes (UTF_8));
+            body.write (("Content-Disposition: form-data; name=\"" + name + "\"" + fileName)
+                .getBytes (UTF_8));
+            body.write ("\r\n\r\n".getBytes (UTF_8));
+            body.write (content instanceof byte[]?
+                (byte[])content : content.toString ().getBytes (UTF_8));
+            body.write ("\r\n".getBytes (UTF_8));
+        }
+        body.write (("--" + BOUNDARY + "--\r\n").getBytes (UTF_8));
+        return body.toByteArray ();
+    }
+
+    private static void assertHalted (Runnable code, int status) {
+        try {
+            code.run ();
+            fail ("Request not halted");
+        }
+        catch (HaltException e) {
+            assertEquals (e.statusCode, status);
+        }
+    }
+
+    public void boundaryIsTakenFromTheContentType () {
+        assertEquals (Multipart.boundary ("multipart/form-data; boundary=abc"), "abc");
+        assertEquals (Multipart.boundary ("multipart/form-data; boundary=\"a;b\""), "a;b");
+        assertHalted (() -> Multipart.boundary ("text/plain"), 415);
+        assertHalted (() -> Multipart.boundary ("multipart/form-data"), 400);
+    }
+
+    public void partsAreReadInOrder () throws IOException {
+        final byte[] file = new byte[100];
+        Arrays.fill (file, (byte)'\r');
+        final byte[] body = multipart ("field", "value", "empty", "", "file.txt", file);
+
+        try (Multipart multipart = new Multipart (body (body), BOUNDARY, 1000, 10)) {
+            final List<Part> parts = new ArrayList<> ();
+            multipart.forEach (parts::add);
+
+            assertEquals (parts.size (), 3);
+            assertEquals (parts.get (0).name, "field");
+            assertNull (parts.get (0).fileName);
+            assertEquals (parts.get (0).string (), "value");
+            assertEquals (parts.get (1).size, 0);
+            assertEquals (parts.get (1).string (), "");
+            assertEquals (parts.get (2).fileName, "file.txt");
+            assertEquals (parts.get (2).string ().getBytes (UTF_8), file);
+            assertFalse (parts.get (2).isFile ());
+        }
+    }
+
+    public void bigPartsAreWrittenToFiles () throws IOException {
+        final byte[] file = new byte[Multipart.BUFFER_SIZE * 3 + 5];
+        for (int ii = 0; ii < file.length; ii++)
+            file[ii] = (byte)ii;
+
+        final Path saved = Files.createTempFile ("saved", ".bin");
+        final InputStream body = body (multipart ("big", file));
+        try (Multipart multipart = new Multipart (body, BOUNDARY, 1 << 20, 10)) {
+            final Part part = multipart.iterator ().next ();
+            assertTrue (part.isFile ());
+            assertEquals (part.size, file.length);
+            part.save (saved);
+            assertEquals (Files.readAllBytes (saved), file);
+        }
+        finally {
+            Files.delete (saved);
+        }
+    }
+
+    public void partsBiggerThanTheLimitHaltTheRequest () throws IOException {
+        final byte[] body = multipart ("big", new byte[Multipart.BUFFER_SIZE * 2]);
+        final int limit = Multipart.BUFFER_SIZE;
+        try (Multipart multipart = new Multipart (body (body), BOUNDARY, limit, 10)) {
+            final Iterator<Part> parts = multipart.iterator ();
+            assertHalted (parts::hasNext, RequestBody.SC_PAYLOAD_TOO_LARGE);
+        }
+    }
+
+    public void bodiesWithTooManyPartsHaltTheRequest () throws IOException {
+        final byte[] body = multipart ("a", "1", "b", "2", "c", "3");
+        try (Multipart multipart = new Multipart (body (body), BOUNDARY, 1000, 2)) {
+            final Iterator<Part> parts = multipart.iterator ();
+            assertEquals (parts.next ().name, "a");
+            assertEquals (parts.next ().name, "b");
+            assertHalted (parts::hasNext, RequestBody.SC_PAYLOAD_TOO_LARGE);
+        }
+    }
+
+    public void smallPartsDoNotKeepTheReadBuffer () throws IOException {
+        final InputStream input;
+        final byte[] first = multipart ("a", "1");
+        try (Multipart multipart = new Multipart (body (first), BOUNDARY, 1000, 10)) {
+            final Part part = multipart.iterator ().next ();
+            input = part.input ();
+        }
+
+        // The buffer released by the previous instance is reused by this one
+        final byte[] second = multipart ("a", "2");
+        try (Multipart multipart = new Multipart (body (second), BOUNDARY, 1000, 10)) {
+            assertEquals (multipart.iterator ().next ().string (), "2");
+            assertEquals (input.read (), '1');
+        }
+    }
+
+    public void malformedBodiesHaltTheRequest () throws IOException {
+        final byte[] body = Arrays.copyOf (multipart ("field", "value"), 60);
+        try (Multipart multipart = new Multipart (body (body), BOUNDARY, 1000, 10)) {
+            final Iterator<Part> parts = multipart.iterator ();
+            assertHalted (parts::hasNext, 400);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.testng.annotations.Test;
+
+@Test public class RequestBodyTest {
+    private static InputStream input (int size) {
+        return new ByteArrayInputStream (new byte[size]);
+    }
+
+    private static void assertHalted (Runnable code) {
+        try {
+            code.run ();
+            fail ("Request not halted");
+        }
+        catch (HaltException e) {
+            assertEquals (e.statusCode, RequestBody.SC_PAYLOAD_TOO_LARGE);
+        }
+    }
+
+    public void bodiesAreReadWithOrWithoutLength () throws IOException {
+        assertEquals (RequestBody.read (input (100), 100, 100).length, 100);
+        assertEquals (RequestBody.read (input (100), -1, 100).length, 100);
+        assertEquals (RequestBody.read (input (50), 100, 100).length, 50);
+        assertEquals (RequestBody.read (input (0), -1, 100).length, 0);
+    }
+
+    public void bigDeclaredLengthsAreReadAsDataArrives () throws IOException {
+        final int size = RequestBody.MAX_INITIAL * 3 + 1;
+        final byte[] body = new byte[size];
+        for (int ii = 0; ii < size; ii++)
+            body[ii] = (byte)ii;
+
+        assertEquals (RequestBody.read (new ByteArrayInputStream (body), size, size), body);
+        assertEquals (RequestBody.read (input (10), 10_000_000, 10_000_000).length, 10);
+    }
+
+    public void bodiesBiggerThanTheLimitHaltTheRequest () {
+        assertHalted (() -> RequestBody.check (101, 100));
+        assertHalted (() -> {
+            try {
+                RequestBody.read (input (101), -1, 100);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException (e);
+            }
+        });
+    }
+
+    public void streamsAndChannelsHaltWhenTheyPassTheLimit () throws IOException {
+        final InputStream stream = new RequestBody.LimitedStream (input (101), 100);
+        assertEquals (stream.read (new byte[100]), 100);
+        assertHalted (() -> {
+            try {
+                stream.read ();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException (e);
+            }
+        });
+
+        final ReadableByteChannel channel =
+            new RequestBody.LimitedChannel (Channels.newChannel (input (101)), 100);
+        assertEquals (channel.read (ByteBuffer.allocate (100)), 100);
+        assertHalted (() -> {
+            try {
+                channel.read (ByteBuffer.allocate (100));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException (e);
+            }
+        });
+    }
+
+    public void charsetIsTakenFromTheContentType () {
+        assertEquals (RequestBody.charset (null), UTF_8);
+        assertEquals (RequestBody.charset ("text/plain"), UTF_8);
+        assertEquals (RequestBody.charset ("text/plain; charset=ISO-8859-1"), ISO_8859_1);
+        assertEquals (RequestBody.charset ("text/plain;Charset=\"iso-8859-1\""), ISO_8859_1);
+        assertEquals (RequestBody.charset ("text/plain; charset=unknown"), UTF_8);
+    }
+}
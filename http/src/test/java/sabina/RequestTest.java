@@ -16,7 +16,9 @@ package sabina;
 
 import static org.apache.http.HttpStatus.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static sabina.HttpMethod.AFTER;
+import static sabina.HttpMethod.GET;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -29,6 +31,7 @@ import javax.servlet.http.*;
 
 import org.testng.annotations.Test;
 import sabina.route.RouteMatch;
+import sabina.server.ServletExchange;
 
 public class RequestTest {
 
@@ -42,7 +45,7 @@ public class RequestTest {
         params.put ("name", new String[] { "Federico" });
         HttpServletRequest servletRequest = new MockedHttpServletRequest (params);
         HttpServletResponse servletResponse = new MockedHttpServletResponse ();
-        Request request = new Request (match, servletRequest, servletResponse);
+        Request request = request (match, servletRequest, servletResponse);
         String name = request.queryParams ("name");
         assertEquals (name, "Federico", "Invalid name in query string");
     }
@@ -54,7 +57,7 @@ public class RequestTest {
             }
         };
         HttpServletResponse servletResponse = new MockedHttpServletResponse ();
-        Request request = new Request (match, servletRequest, servletResponse);
+        Request request = request (match, servletRequest, servletResponse);
         assertEquals (
             request.servletPath (), THE_SERVLET_PATH,
             "Should have delegated getting the servlet path");
@@ -67,12 +70,36 @@ public class RequestTest {
             }
         };
         HttpServletResponse servletResponse = new MockedHttpServletResponse ();
-        Request request = new Request (match, servletRequest, servletResponse);
+        Request request = request (match, servletRequest, servletResponse);
         assertEquals (
             request.contextPath (), THE_CONTEXT_PATH,
             "Should have delegated getting the context path");
     }
 
+    @Test public void paramsAndSplatAreExtractedFromMatchedPath () {
+        Route route = new Route (GET, "/users/:Name/files/*", it -> "");
+        Request request = request (
+            new RouteMatch (route, "/users/jam/files/docs//a.txt"),
+            new MockedHttpServletRequest (null),
+            new MockedHttpServletResponse ());
+
+        assertEquals (request.params ().size (), 1);
+        assertEquals (request.params ("name"), "jam");
+        assertEquals (request.params (":NAME"), "jam");
+        assertEquals (request.splat (), new String[] { "docs/a.txt" });
+    }
+
+    @Test public void splatIsEmptyForTrailingSlash () {
+        Route route = new Route (GET, "/files/*", it -> "");
+        Request request = request (
+            new RouteMatch (route, "/files/"),
+            new MockedHttpServletRequest (null),
+            new MockedHttpServletResponse ());
+
+        assertEquals (request.splat ().length, 0);
+        assertEquals (request.params ().size (), 0);
+    }
+
 //    @Test (expectedExceptions = IllegalArgumentException.class)
 //    public void contextWithNullRequest () {
 //        new Request (null, new Response ());
@@ -126,6 +153,30 @@ public class RequestTest {
         exchange.halt (99);
     }
 
+    @Test public void haltsWithoutBodyAreSharedAndHaveNoStackTrace () {
+        final Request exchange = createRequest ();
+        HaltException first = null;
+        try {
+            exchange.halt (SC_UNAUTHORIZED);
+        }
+        catch (HaltException he) {
+            first = he;
+        }
+        try {
+            exchange.halt (SC_UNAUTHORIZED);
+        }
+        catch (HaltException he) {
+            assertSame (he, first);
+            assertEquals (he.statusCode, SC_UNAUTHORIZED);
+            assertEquals (he.getStackTrace ().length, 0);
+        }
+    }
+
+    @Test (expectedExceptions = PassException.class)
+    public void pass () {
+        createRequest ().pass ();
+    }
+
     @Test (expectedExceptions = HaltException.class)
     public void haltBody () {
         try {
@@ -293,10 +344,16 @@ public class RequestTest {
         @Override public Locale getLocale () { return null; }
     }
 
+    private static Request request (
+        RouteMatch match, HttpServletRequest request, HttpServletResponse response) {
+
+        return new Request (match, new ServletExchange (request, response));
+    }
+
     private Request createRequest () {
         RouteMatch match = new RouteMatch (new Route (AFTER, "/", it -> ""), "/");
         MockedHttpServletRequest servletRequest = new MockedHttpServletRequest (null);
         MockedHttpServletResponse servletResponse = new MockedHttpServletResponse ();
-        return new Request (match, servletRequest, servletResponse);
+        return request (match, servletRequest, servletResponse);
     }
 }
@@ -15,6 +15,7 @@
 package sabina;
 
 import static sabina.HttpMethod.AFTER;
+import static sabina.HttpMethod.GET;
 
 import org.testng.annotations.Test;
 
@@ -51,4 +52,10 @@ public class RouteTest {
         assert action.method.equals (AFTER);
         assert action.toString ().equals ("AFTER path [type]");
     }
+
+    @Test public void nonBlockingHandlers () {
+        assert new Route (GET, "path", "type", it -> "").blocking;
+        assert !new Route (GET, "path", "type", new Server ().nonBlocking (it -> "")).blocking;
+        assert !new Route (GET, "path", "type", new Constant ("text/plain", "")).blocking;
+    }
 }
@@ -18,7 +18,18 @@ import static org.testng.Assert.*;
 import static sabina.integration.TestScenario.*;
 import static java.lang.String.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import sabina.Constant;
 import sabina.Request;
+import sabina.Route.Handler;
 import sabina.Route.VoidHandler;
 import sabina.Server;
 
@@ -63,6 +74,16 @@ final class Generic {
 
         s.get ("/hi", it -> "Hello World!");
 
+        s.get ("/bytes/constant", new Constant ("text/plain", "constant"));
+        s.get ("/bytes/array", (Handler)it -> "array".getBytes ());
+        s.get ("/bytes/buffer", (Handler)it -> ByteBuffer.wrap ("buffer".getBytes ()));
+        s.get ("/bytes/stream", (Handler)it -> new ByteArrayInputStream ("stream".getBytes ()));
+        s.get ("/bytes/channel", (Handler)it ->
+            Channels.newChannel (new ByteArrayInputStream ("channel".getBytes ())));
+        s.get ("/bytes/direct", (Handler)it ->
+            (ByteBuffer)ByteBuffer.allocateDirect (6).put ("direct".getBytes ()).flip ());
+        s.get ("/bytes/file", (Handler)it -> file ("file"));
+
         s.get ("/param/:param", it -> "echo: " + it.params (":param"));
 
         s.get ("/paramandwild/:param/stuff/*", it ->
@@ -100,6 +121,19 @@ final class Generic {
             it.halt (500, "halted");
         });
 
+        s.get ("/pass/:name", it -> {
+            if (!it.params (":name").equals ("first"))
+                it.pass ();
+            return "first route";
+        });
+        s.get ("/pass/*", it -> "second route");
+        s.get ("/passed", it -> { it.pass (); });
+        s.get ("/async/pass", s.async (it -> {
+            it.pass ();
+            return "unreachable";
+        }));
+        s.get ("/async/pass", it -> "passed");
+
         s.get ("/tworoutes/" + part + "/:param", it ->
                 part + " route: " + it.params (":param")
         );
@@ -109,6 +143,17 @@ final class Generic {
         );
 
         s.after ("/hi", it -> it.response.header ("after", "foobar"));
+
+        s.get ("/async/hi", s.async (it -> "Hello async!"));
+        s.get ("/async/future", (Handler)it -> CompletableFuture.completedFuture ("Hello future!"));
+        s.get ("/async/exception", s.async (it -> {
+            throw new UnsupportedOperationException ("async error");
+        }));
+        s.get ("/async/halt", s.async (it -> {
+            it.halt (401, "Not now");
+            return "unreachable";
+        }));
+        s.after ("/async/*", it -> it.response.header ("after", "async"));
     }
 
     static void filtersShouldBeAcceptTypeAware (TestScenario testScenario) {
@@ -132,6 +177,68 @@ final class Generic {
         testScenario.assertResponseEquals (response, "", 200);
     }
 
+    static void binaryBodies (TestScenario testScenario) {
+        for (String body : new String[] {
+            "array", "buffer", "stream", "channel", "direct", "file" }) {
+
+
+            UrlResponse response = testScenario.doMethod ("GET", "/bytes/" + body);
+            testScenario.assertResponseEquals (response, body, 200);
+            String contentType = response.headers.get ("Content-Type");
+            assertTrue (contentType.startsWith ("application/octet-stream"));
+        }
+
+        UrlResponse response = testScenario.doMethod ("GET", "/bytes/array");
+        assertEquals (response.headers.get ("Content-Length"), "5");
+    }
+
+    private static Path file (String content) {
+        try {
+            final Path file = Files.createTempFile ("sabina", ".bin");
+            file.toFile ().deleteOnExit ();
+            return Files.write (file, content.getBytes ());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException (e);
+        }
+    }
+
+    static void constantBody (TestScenario testScenario) {
+        UrlResponse response = testScenario.doMethod ("GET", "/bytes/constant");
+        testScenario.assertResponseEquals (response, "constant", 200);
+        assertTrue (response.headers.get ("Content-Type").startsWith ("text/plain"));
+        assertEquals (response.headers.get ("Content-Length"), "8");
+    }
+
+    static void asyncHandlers (TestScenario testScenario) {
+        UrlResponse response = testScenario.doMethod ("GET", "/async/hi");
+        testScenario.assertResponseEquals (response, "Hello async!", 200);
+        assertEquals (response.headers.get ("after"), "async");
+
+        response = testScenario.doMethod ("GET", "/async/future");
+        testScenario.assertResponseEquals (response, "Hello future!", 200);
+
+        response = testScenario.doMethod ("GET", "/async/exception");
+        assertEquals (response.headers.get ("error"), "async error");
+        assertEquals (response.headers.get ("after"), "async");
+
+        response = testScenario.doMethod ("GET", "/async/halt");
+        testScenario.assertResponseEquals (response, "Not now", 401);
+        assertNull (response.headers.get ("after"));
+    }
+
+    static void hiOptions (TestScenario testScenario) {
+        UrlResponse response = testScenario.doMethod ("OPTIONS", "/hi");
+        testScenario.assertResponseEquals (response, "", 200);
+        assertEquals (response.headers.get ("Allow"), "GET, HEAD, OPTIONS");
+    }
+
+    static void hiMethodNotAllowed (TestScenario testScenario) {
+        UrlResponse response = testScenario.doMethod ("DELETE", "/hi");
+        assertEquals (response.status, 405);
+        assertEquals (response.headers.get ("Allow"), "GET, HEAD, OPTIONS");
+    }
+
     static void getHiAfterFilter (TestScenario testScenario) {
         UrlResponse response = testScenario.doMethod ("GET", "/hi");
         assertTrue (response.headers.get ("after").contains ("foobar"));
@@ -157,6 +264,12 @@ final class Generic {
         testScenario.assertResponseEquals (response, "echo: gunit", 200);
     }
 
+    /** Paths are matched before decoding them in every backend. */
+    static void echoEncodedParam (TestScenario testScenario) {
+        UrlResponse response = testScenario.doMethod ("GET", "/param/a%20b%2Fc");
+        testScenario.assertResponseEquals (response, "echo: a%20b%2Fc", 200);
+    }
+
     static void echoParamWithUpperCaseInValue (TestScenario testScenario) {
         final String camelCased = "ThisIsAValueAndSabinaShouldRetainItsUpperCasedCharacters";
         UrlResponse response = testScenario.doMethod ("GET", "/param/" + camelCased);
@@ -225,6 +338,20 @@ final class Generic {
         testScenario.assertResponseEquals (response, "halted", 500);
     }
 
+    static void pass (TestScenario testScenario) {
+        UrlResponse response = testScenario.doMethod ("GET", "/pass/first");
+        testScenario.assertResponseEquals (response, "first route", 200);
+
+        response = testScenario.doMethod ("GET", "/pass/other");
+        testScenario.assertResponseEquals (response, "second route", 200);
+
+        response = testScenario.doMethod ("GET", "/passed");
+        assertEquals (response.status, 404);
+
+        response = testScenario.doMethod ("GET", "/async/pass");
+        testScenario.assertResponseEquals (response, "passed", 200);
+    }
+
     // TODO Check with asserts
     static void requestData (TestScenario testScenario) {
         UrlResponse response = testScenario.doMethod ("GET", "/request/data?query");
@@ -52,6 +52,22 @@ import sabina.Server;
         new TestScenario ("undertow", 6012, false, true),
         new TestScenario ("undertow", 6013, true, false),
         new TestScenario ("undertow", 6014, true, true),
+        new TestScenario ("undertow-native", 6031, false, false),
+        new TestScenario ("undertow-native", 6032, false, true),
+        new TestScenario ("undertow-native", 6033, true, false),
+        new TestScenario ("undertow-native", 6034, true, true),
+        new TestScenario ("netty", 6041, false, false),
+        new TestScenario ("netty", 6042, false, true),
+        new TestScenario ("netty", 6043, true, false),
+        new TestScenario ("netty", 6044, true, true),
+        new TestScenario ("grizzly", 6051, false, false),
+        new TestScenario ("grizzly", 6052, false, true),
+        new TestScenario ("grizzly", 6053, true, false),
+        new TestScenario ("grizzly", 6054, true, true),
+        new TestScenario ("jdk", 6061, false, false),
+        new TestScenario ("jdk", 6062, false, true),
+        new TestScenario ("jdk", 6063, true, false),
+        new TestScenario ("jdk", 6064, true, true),
         new TestScenario ("jetty", 6021, false, false),
         new TestScenario ("jetty", 6022, false, true),
         new TestScenario ("jetty", 6023, true, false),
@@ -153,6 +169,18 @@ import sabina.Server;
     @Test(dataProvider = "scenarios")
     public void hiHead (TestScenario testScenario) { Generic.hiHead (testScenario); }
     @Test(dataProvider = "scenarios")
+    public void binaryBodies (TestScenario testScenario) { Generic.binaryBodies (testScenario); }
+    @Test(dataProvider = "scenarios")
+    public void constantBody (TestScenario testScenario) { Generic.constantBody (testScenario); }
+    @Test(dataProvider = "scenarios")
+    public void asyncHandlers (TestScenario testScenario) { Generic.asyncHandlers (testScenario); }
+    @Test(dataProvider = "scenarios")
+    public void hiOptions (TestScenario testScenario) { Generic.hiOptions (testScenario); }
+    @Test(dataProvider = "scenarios")
+    public void hiMethodNotAllowed (TestScenario testScenario) {
+        Generic.hiMethodNotAllowed (testScenario);
+    }
+    @Test(dataProvider = "scenarios")
     public void getHiAfterFilter (TestScenario testScenario) {
         Generic.getHiAfterFilter (testScenario);
     }
@@ -165,6 +193,10 @@ import sabina.Server;
     @Test(dataProvider = "scenarios")
     public void echoParam2 (TestScenario testScenario) { Generic.echoParam2 (testScenario); }
     @Test(dataProvider = "scenarios")
+    public void echoEncodedParam (TestScenario testScenario) {
+        Generic.echoEncodedParam (testScenario);
+    }
+    @Test(dataProvider = "scenarios")
     public void echoParamWithUpperCaseInValue (TestScenario testScenario) {
         Generic.echoParamWithUpperCaseInValue (testScenario);
     }
@@ -194,6 +226,8 @@ import sabina.Server;
     @Test(dataProvider = "scenarios")
     public void halt (TestScenario testScenario) { Generic.halt (testScenario); }
     @Test(dataProvider = "scenarios")
+    public void pass (TestScenario testScenario) { Generic.pass (testScenario); }
+    @Test(dataProvider = "scenarios")
     public void requestData (TestScenario testScenario) { Generic.requestData (testScenario); }
     @Test(dataProvider = "scenarios")
     public void handleException (TestScenario testScenario) {
@@ -14,6 +14,7 @@
 
 package sabina.integration;
 
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import static java.lang.System.out;
@@ -24,8 +25,8 @@ import static org.testng.Assert.assertEquals;
 import java.io.*;
 import java.net.Socket;
 import java.security.KeyStore;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
@@ -140,7 +141,8 @@ final class TestScenario {
             HttpEntity entity = httpResponse.getEntity ();
             urlResponse.body = entity != null? EntityUtils.toString (entity) : "";
 
-            Map<String, String> headers = new HashMap<> ();
+            // Header names are case insensitive (some servers normalize them)
+            Map<String, String> headers = new TreeMap<> (CASE_INSENSITIVE_ORDER);
             Header[] allHeaders = httpResponse.getAllHeaders ();
             for (Header header : allHeaders)
                 headers.put (header.getName (), header.getValue ());
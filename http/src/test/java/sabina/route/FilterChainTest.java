@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static sabina.HttpMethod.*;
+import static sabina.Route.ALL_PATHS;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+import sabina.HttpMethod;
+import sabina.Route;
+
+@Test public class FilterChainTest {
+    private static final List<String> ROUTES = asList (
+        "/", "/hi", "/hi/", "/param/:param", "/a/*", "/a/b", "/a/:b/c", "/files/*", "/users/:id/"
+    );
+
+    private static final List<String> FILTERS = asList (
+        ALL_PATHS, "/hi", "/a/*", "/a/:x", "/param/*", "/param/other", "/*", "/users/:id/",
+        "/files/:name"
+    );
+
+    private static final List<String> PATHS = asList (
+        "/", "/hi", "/hi/", "/param/x", "/param/other", "/a/", "/a/b", "/a/x/c", "/a/x/c/d",
+        "/files/1", "/files/1/2", "/users/1/", "/none", "/none/more"
+    );
+
+    private static RouteMatcher matcher (String router) {
+        RouteMatcher matcher = RouteMatcherFactory.create (router);
+        for (int ii = 0; ii < Math.max (ROUTES.size (), FILTERS.size ()); ii++) {
+            if (ii < FILTERS.size ()) {
+                String path = FILTERS.get (ii);
+                matcher.processRoute (new Route (BEFORE, path, "*/*", it -> path));
+                matcher.processRoute (new Route (AFTER, path, "text/html", it -> path));
+            }
+            if (ii < ROUTES.size ()) {
+                String path = ROUTES.get (ii);
+                matcher.processRoute (new Route (GET, path, "*/*", it -> path));
+            }
+        }
+        return matcher;
+    }
+
+    private static String describe (List<RouteMatch> matches) {
+        StringBuilder result = new StringBuilder ();
+        for (RouteMatch match : matches)
+            result.append (match.entry.path).append (' ');
+        return result.toString ();
+    }
+
+    public void frozen_chains_find_the_same_filters_as_lookups () {
+        for (String router : asList ("simple", "tree")) {
+            RouteMatcher matcher = matcher (router);
+            matcher.freeze ();
+
+            for (String path : PATHS) {
+                RouteMatch target = matcher.findTarget (GET, path, null);
+                for (HttpMethod method : asList (BEFORE, AFTER))
+                    for (String accept : asList (null, "application/json", "text/html")) {
+                        assertEquals (
+                            describe (matcher.findFilters (method, target, path, accept)),
+                            describe (matcher.findTargets (method, path, accept)),
+                            router + " " + method + " " + path + " " + accept);
+                    }
+            }
+        }
+    }
+
+    public void routes_added_after_freeze_are_filtered () {
+        RouteMatcher matcher = matcher ("tree");
+        matcher.freeze ();
+        matcher.processRoute (new Route (BEFORE, "/late", "*/*", it -> ""));
+        matcher.processRoute (new Route (GET, "/late", "*/*", it -> ""));
+
+        RouteMatch target = matcher.findTarget (GET, "/late", null);
+        assertEquals (
+            describe (matcher.findFilters (BEFORE, target, "/late", null)),
+            ALL_PATHS + " /* /late ");
+    }
+}
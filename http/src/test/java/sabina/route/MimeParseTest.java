@@ -16,9 +16,13 @@ package sabina.route;
 
 import static java.util.Arrays.asList;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static sabina.route.MimeParse.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.testng.annotations.Test;
@@ -108,4 +112,68 @@ import org.testng.annotations.Test;
         // match using a wildcard for both requested and supported
         assertEquals(bestMatch (mimeTypesSupported, "image/*"), "image/*");
     }
+
+    /** Original implementation of 'bestMatch' (used to check the in place scoring). */
+    private static String reference (Collection<String> supported, String header) {
+        List<ParseResults> parseResults = new ArrayList<> ();
+        List<FitnessAndQuality> weightedMatches = new ArrayList<> ();
+        for (String r : header.split (","))
+            parseResults.add (parseMediaRange (r));
+
+        for (String s : supported) {
+            FitnessAndQuality fitnessAndQuality = fitnessAndQualityParsed (s, parseResults);
+            fitnessAndQuality.mimeType = s;
+            weightedMatches.add (fitnessAndQuality);
+        }
+        Collections.sort (weightedMatches);
+
+        FitnessAndQuality lastOne = weightedMatches.get (weightedMatches.size () - 1);
+        return Float.compare (lastOne.quality, 0) != 0? lastOne.mimeType : NO_MIME_TYPE;
+    }
+
+    public void testBestMatchEqualsReference() {
+        List<List<String>> supported = asList (
+            asList ("text/html"),
+            asList ("application/json", "text/html"),
+            asList ("text/html;level=1", "text/html;level=2", "text/*"),
+            asList ("*/*", "application/xml", "image/*"),
+            asList ("*", "text/plain ; charset=utf-8")
+        );
+        List<String> headers = asList (
+            "text/html", "*/*", "*", " *; q=.2", "text/*;q=0.3, text/html;q=0.7",
+            "text/html;level=1, text/html;level=2;q=0.4, */*;q=0.5",
+            "application/json,text/javascript, */*", "text/plain; charset=utf-8; q=0.8",
+            "text/plain;q=0", "text/html;q=2, image/png;q=-1", "text/html;q=abc",
+            "text/html;q=, application/json;q=0.25", "text/html;q=0.5;q=0.9",
+            "image/jpeg, image/*;q=0.01, */*;q=0.001", " text / html ; level = 1 ",
+            "text/html;a=b=, text/plain;=x", "application/json;q=1.0, text/html;q=1.",
+            "text/html;q=+0.5, */*;q=1e-1", "text/html,", "a//b, text/html"
+        );
+
+        for (List<String> types : supported)
+            for (String header : headers)
+                assertEquals (bestMatch (types, header), reference (types, header),
+                    types + " " + header);
+    }
+
+    public void testBestMatchDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean ();
+        long thread = Thread.currentThread ().getId ();
+        List<MediaType> types = asList (
+            new MediaType ("application/json"), new MediaType ("text/html;level=1"));
+        String header = "text/*;q=0.3, text/html;q=0.7, text/html;level=1, */*;q=0.5";
+
+        int result = 0;
+        for (int ii = 0; ii < 20_000; ii++)
+            result += bestMatch (types, header);
+
+        long before = threads.getThreadAllocatedBytes (thread);
+        for (int ii = 0; ii < 10_000; ii++)
+            result += bestMatch (types, header);
+        long allocated = threads.getThreadAllocatedBytes (thread) - before;
+
+        assertEquals (result, 30_000);
+        assertTrue (allocated < 1024, allocated + " bytes allocated");
+    }
 }
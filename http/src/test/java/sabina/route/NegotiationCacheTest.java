@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static org.testng.Assert.*;
+import static sabina.HttpMethod.GET;
+
+import org.testng.annotations.Test;
+import sabina.Route;
+
+@Test public class NegotiationCacheTest {
+    private static final String ACCEPT = "text/*;q=0.3, text/html;q=0.7, application/json";
+
+    private static RouteMatcher matcher () {
+        RouteMatcher matcher = RouteMatcherFactory.create ("simple");
+        matcher.processRoute (new Route (GET, "/res", "text/html", it -> "html"));
+        matcher.processRoute (new Route (GET, "/res", "application/json", it -> "json"));
+        return matcher;
+    }
+
+    public void repeated_headers_are_resolved_from_the_cache () {
+        RouteMatcher matcher = matcher ();
+        NegotiationCache cache = matcher.negotiationCache ();
+
+        for (int ii = 0; ii < 3; ii++)
+            assertEquals (matcher.findTarget (GET, "/res", ACCEPT).entry.acceptType,
+                "application/json");
+
+        assertEquals (cache.misses (), 1);
+        assertEquals (cache.hits (), 2);
+        assertEquals (cache.size (), 1);
+    }
+
+    public void unacceptable_types_are_cached_too () {
+        RouteMatcher matcher = matcher ();
+        NegotiationCache cache = matcher.negotiationCache ();
+
+        assertNull (matcher.findTarget (GET, "/res", "image/png"));
+        assertNull (matcher.findTarget (GET, "/res", "image/png"));
+        assertEquals (cache.hits (), 1);
+    }
+
+    public void new_routes_clear_the_cache () {
+        RouteMatcher matcher = matcher ();
+        matcher.findTarget (GET, "/res", "image/png");
+        matcher.processRoute (new Route (GET, "/res", "image/png", it -> "png"));
+
+        assertEquals (matcher.negotiationCache ().size (), 0);
+        assertEquals (matcher.findTarget (GET, "/res", "image/png").entry.acceptType, "image/png");
+    }
+
+    public void full_cache_replaces_results () {
+        NegotiationCache cache = new NegotiationCache (1);
+        Route route = new Route (GET, "/res", "text/html", it -> "");
+
+        cache.negotiate (route, "text/html", (r, h) -> r);
+        cache.negotiate (route, "text/plain", (r, h) -> null);
+        cache.negotiate (route, "text/plain", (r, h) -> null);
+
+        assertEquals (cache.size (), 1);
+        assertEquals (cache.misses (), 2);
+        assertEquals (cache.hits (), 1);
+    }
+
+    public void junk_headers_do_not_keep_other_headers_out_of_the_cache () {
+        RouteMatcher matcher = matcher ();
+        NegotiationCache cache = matcher.negotiationCache ();
+
+        for (int ii = 0; ii < cache.capacity () * 2; ii++)
+            matcher.findTarget (GET, "/res", "application/x-junk-" + ii);
+        assertEquals (cache.size (), cache.capacity ());
+
+        long hits = cache.hits ();
+        matcher.findTarget (GET, "/res", ACCEPT);
+        matcher.findTarget (GET, "/res", ACCEPT);
+        assertEquals (cache.hits (), hits + 1);
+        assertEquals (cache.size (), cache.capacity ());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.*;
+import static sabina.HttpMethod.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+import sabina.Route;
+
+@Test public class RouteTableTest {
+    public void routes_are_added_and_removed_after_freeze () {
+        for (String router : asList ("simple", "tree")) {
+            RouteMatcher matcher = RouteMatcherFactory.create (router);
+            matcher.processRoute (new Route (GET, "/a", "*/*", it -> "a"));
+            matcher.freeze ();
+
+            matcher.processRoute (new Route (GET, "/b/:id", "*/*", it -> "b"));
+            matcher.processRoute (new Route (BEFORE, "/b/*", "*/*", it -> "f"));
+            assertNotNull (matcher.findTarget (GET, "/b/1", null), router);
+            assertEquals (matcher.findTargets (BEFORE, "/b/1", null).size (), 1, router);
+
+            assertTrue (matcher.removeRoute (GET, "/b/:id"), router);
+            assertFalse (matcher.removeRoute (GET, "/b/:id"), router);
+            assertNull (matcher.findTarget (GET, "/b/1", null), router);
+            assertNotNull (matcher.findTarget (GET, "/a", null), router);
+            assertTrue (matcher.findRoutes ("/b/1").isEmpty (), router);
+
+            assertTrue (matcher.removeRoute (BEFORE, "/b/*"), router);
+            assertTrue (matcher.findTargets (BEFORE, "/b/1", null).isEmpty (), router);
+        }
+    }
+
+    public void lookups_see_complete_tables_while_routes_change () throws Exception {
+        RouteMatcher matcher = RouteMatcherFactory.create ("tree");
+        matcher.processRoute (new Route (GET, "/stable", "*/*", it -> ""));
+        matcher.freeze ();
+
+        AtomicBoolean running = new AtomicBoolean (true);
+        ExecutorService executor = Executors.newFixedThreadPool (2);
+        Future<?> reader = executor.submit (() -> {
+            while (running.get ())
+                if (matcher.findTarget (GET, "/stable", null) == null)
+                    throw new IllegalStateException ("Stable route not found");
+        });
+        Future<?> writer = executor.submit (() -> {
+            for (int ii = 0; ii < 500; ii++) {
+                matcher.processRoute (new Route (GET, "/dynamic/" + ii, "*/*", it -> ""));
+                if (ii % 2 == 0)
+                    matcher.removeRoute (GET, "/dynamic/" + ii);
+            }
+        });
+
+        writer.get (30, TimeUnit.SECONDS);
+        running.set (false);
+        reader.get (30, TimeUnit.SECONDS);
+        executor.shutdown ();
+
+        assertNull (matcher.findTarget (GET, "/dynamic/0", null));
+        assertNotNull (matcher.findTarget (GET, "/dynamic/1", null));
+    }
+}
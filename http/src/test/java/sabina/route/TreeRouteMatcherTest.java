@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.route;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static sabina.HttpMethod.*;
+import static sabina.Route.ALL_PATHS;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+import sabina.HttpMethod;
+import sabina.Route;
+
+@Test public class TreeRouteMatcherTest {
+    private static final List<String> ROUTES = asList (
+        "/", "/hi", "/hi/", "/param/:param", "/paramandwild/:param/stuff/*", "/a/*", "/a/b",
+        "/a/:b/c", "/a/*/c", "/*", "/files/*", "/prefix*", "/users/:id/", "users/:name"
+    );
+
+    private static final List<String> PATHS = asList (
+        "/", "/hi", "/hi/", "/hix", "/param/x", "/param/x/", "/param/", "/paramandwild/a/stuff/b",
+        "/paramandwild/a/stuff/b/c/d", "/paramandwild/a/stuff", "/paramandwild/a/stuff/", "/a",
+        "/a/", "/a/b", "/a/b/", "/a/b/c", "/a/x/c", "/a/x/c/d", "/files", "/files/", "/files/1",
+        "/prefix", "/prefix*", "/prefix*/more", "/users/1", "/users/1/", "/a//b", "//hi"
+    );
+
+    private static RouteMatcher matcher (String router, HttpMethod method) {
+        RouteMatcher matcher = RouteMatcherFactory.create (router);
+        for (String path : ROUTES)
+            matcher.processRoute (new Route (method, path, "*/*", it -> path));
+        matcher.processRoute (new Route (BEFORE, ALL_PATHS, "*/*", it -> ALL_PATHS));
+        return matcher;
+    }
+
+    private static String describe (List<RouteMatch> matches) {
+        StringBuilder result = new StringBuilder ();
+        for (RouteMatch match : matches)
+            result.append (match.entry.path).append (' ');
+        return result.toString ();
+    }
+
+    public void tree_matches_the_same_routes_as_simple_matcher () {
+        for (HttpMethod method : asList (GET, BEFORE)) {
+            RouteMatcher simple = matcher ("simple", method);
+            RouteMatcher tree = matcher ("tree", method);
+
+            for (String path : PATHS)
+                assertEquals (
+                    describe (tree.findTargets (method, path, null)),
+                    describe (simple.findTargets (method, path, null)),
+                    method + " " + path);
+        }
+    }
+
+    public void static_routes_table_finds_the_same_routes_as_patterns () {
+        for (String router : asList ("simple", "tree")) {
+            RouteMatcher matcher = matcher (router, GET);
+            matcher.processRoute (new Route (GET, "/a/b", "application/json", it -> "json"));
+            matcher.processRoute (new Route (GET, "a//b/c", "*/*", it -> "c"));
+            RouteMatcher frozen = matcher (router, GET);
+            frozen.processRoute (new Route (GET, "/a/b", "application/json", it -> "json"));
+            frozen.processRoute (new Route (GET, "a//b/c", "*/*", it -> "c"));
+            frozen.freeze ();
+
+            for (String path : PATHS)
+                for (String accept : asList (null, "application/json", "text/html")) {
+                    assertEquals (
+                        describe (frozen.findTargets (GET, path, accept)),
+                        describe (matcher.findTargets (GET, path, accept)),
+                        router + " " + path);
+
+                    RouteMatch target = frozen.findTarget (GET, path, accept);
+                    RouteMatch expected = matcher.findTarget (GET, path, accept);
+                    assertEquals (String.valueOf (target == null? null : target.entry),
+                        String.valueOf (expected == null? null : expected.entry),
+                        router + " " + path);
+                }
+        }
+    }
+
+    public void path_match_has_the_routes_of_all_methods () {
+        for (String router : asList ("simple", "tree")) {
+            RouteMatcher matcher = matcher (router, GET);
+            matcher.processRoute (new Route (POST, "/param/:id", "*/*", it -> "post"));
+            matcher.processRoute (new Route (DELETE, "/hi", "*/*", it -> "delete"));
+
+            for (boolean frozen : asList (false, true)) {
+                if (frozen)
+                    matcher.freeze ();
+
+                PathMatch param = matcher.findRoutes ("/param/1");
+                assertEquals (param.allow (), "GET, POST, HEAD, OPTIONS", router);
+                assertEquals (matcher.findTarget (POST, param, null).entry.path, "/param/:id");
+                assertEquals (matcher.findTarget (GET, param, null).entry.path, "/param/:param");
+                assertNull (matcher.findTarget (PUT, param, null));
+
+                PathMatch hi = matcher.findRoutes ("/hi");
+                assertEquals (hi.allow (), "GET, DELETE, HEAD, OPTIONS", router);
+                assertEquals (hi.allows (PATCH), false);
+                assertEquals (matcher.findTarget (DELETE, hi, null).entry.path, "/hi");
+
+            }
+
+            PathMatch none = RouteMatcherFactory.create (router).findRoutes ("/none");
+            assertEquals (none.isEmpty (), true);
+            assertEquals (none.allows (OPTIONS), false);
+        }
+    }
+
+    public void first_registered_route_wins () {
+        RouteMatcher tree = matcher ("tree", GET);
+        assertEquals (tree.findTarget (GET, "/a/b", null).entry.path, "/a/*");
+        assertEquals (tree.findTarget (GET, "/param/x", null).entry.path, "/param/:param");
+        assertEquals (tree.findTarget (GET, "/", null).entry.path, "/");
+        assertNull (tree.findTarget (POST, "/", null));
+    }
+
+    public void accept_type_selects_route () {
+        RouteMatcher tree = RouteMatcherFactory.create ("tree");
+        tree.processRoute (new Route (GET, "/hi", "application/json", it -> "json"));
+        tree.processRoute (new Route (GET, "/hi", "*/*", it -> "html"));
+
+        assertEquals (tree.findTarget (GET, "/hi", "application/json").entry.acceptType,
+            "application/json");
+        assertEquals (tree.findTarget (GET, "/hi", "text/html").entry.acceptType, "*/*");
+    }
+
+    @Test (expectedExceptions = IllegalStateException.class)
+    public void unknown_router_results_in_exception () {
+        RouteMatcherFactory.create ("bad");
+    }
+}
@@ -14,10 +14,15 @@
 
 package sabina.server;
 
+import static java.util.Arrays.asList;
+import static org.testng.Assert.*;
+
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.HashSet;
 
 import org.testng.annotations.Test;
+import sabina.route.RouteMatcherFactory;
 
 @Test public class BackendFactoryTest {
     @Test (expectedExceptions = IllegalStateException.class)
@@ -39,4 +44,40 @@ import org.testng.annotations.Test;
     public void create_invalid_backend_results_in_exception () {
         BackendFactory.create ("bad", null, false);
     }
+
+    public void invalid_backend_exception_lists_the_available_ones () {
+        try {
+            create ("bad");
+            fail ();
+        }
+        catch (IllegalStateException e) {
+            assertTrue (e.getMessage ().contains ("'bad'"));
+            assertTrue (e.getMessage ().contains ("jdk"));
+        }
+    }
+
+    public void backends_are_found_by_the_name_of_their_provider () {
+        assertTrue (create ("jdk") instanceof JdkServer);
+        assertTrue (create ("undertow-native") instanceof UndertowNativeServer);
+    }
+
+    public void undertow_is_the_default_backend_if_it_is_available () {
+        assertEquals (BackendFactory.defaultBackend (), "undertow");
+    }
+
+    public void the_only_engine_besides_jdk_is_the_default_backend () {
+        assertEquals (defaultBackend ("jdk", "jetty"), "jetty");
+        assertEquals (defaultBackend ("jdk", "netty"), "netty");
+        assertEquals (defaultBackend ("jdk", "jetty", "undertow", "undertow-native"), "undertow");
+        assertEquals (defaultBackend ("jdk", "jetty", "netty"), "jdk");
+        assertEquals (defaultBackend ("jdk"), "jdk");
+    }
+
+    private static String defaultBackend (String... backends) {
+        return BackendFactory.defaultBackend (new HashSet<> (asList (backends)));
+    }
+
+    private static Backend create (String backend) {
+        return BackendFactory.create (backend, RouteMatcherFactory.create (), false);
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.server;
+
+import static org.testng.Assert.*;
+
+import org.testng.annotations.Test;
+
+public class MemorySessionsTest {
+    @Test public void createdSessionsAreFoundByTheirId () {
+        MemorySessions sessions = new MemorySessions ();
+        ExchangeSession session = sessions.create ();
+        session.attribute ("key", "value");
+        assertTrue (session.isNew ());
+
+        ExchangeSession found = sessions.get (session.id ());
+        assertSame (found, session);
+        assertEquals (found.attribute ("key"), "value");
+        assertFalse (found.isNew ());
+    }
+
+    @Test public void unknownOrInvalidatedSessionsAreNotFound () {
+        MemorySessions sessions = new MemorySessions ();
+        assertNull (sessions.get (null));
+        assertNull (sessions.get ("unknown"));
+
+        ExchangeSession session = sessions.create ();
+        session.invalidate ();
+        assertNull (sessions.get (session.id ()));
+    }
+
+    @Test public void expiredSessionsAreNotFound () throws InterruptedException {
+        MemorySessions sessions = new MemorySessions ();
+        ExchangeSession session = sessions.create ();
+        session.maxInactiveInterval (1);
+        Thread.sleep (1100);
+        assertNull (sessions.get (session.id ()));
+    }
+
+    @Test public void sessionIdsAreUnique () {
+        MemorySessions sessions = new MemorySessions ();
+        assertNotEquals (sessions.create ().id (), sessions.create ().id ());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package sabina.util;
+
+import static org.testng.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+@Test public class ThreadsTest {
+    public void virtual_threads_executor_runs_tasks_if_supported () throws Exception {
+        if (!Threads.virtualThreadsAvailable ())
+            return;
+
+        ExecutorService executor = Threads.virtualThreads ("test");
+        Thread thread = executor.submit (Thread::currentThread).get (10, TimeUnit.SECONDS);
+        executor.shutdown ();
+
+        assertNotEquals (thread, Thread.currentThread ());
+    }
+
+    public void virtual_threads_are_not_replaced_by_platform_threads () {
+        if (Threads.virtualThreadsAvailable ())
+            return;
+
+        try {
+            Threads.virtualThreads ("test");
+            fail ("Virtual threads executor created without virtual threads");
+        }
+        catch (IllegalStateException e) {
+            assertTrue (e.getMessage ().contains ("not supported"));
+        }
+    }
+
+    public void bounded_threads_reject_tasks_when_the_queue_is_full () throws Exception {
+        ExecutorService executor = Threads.boundedThreads ("test", 1, 1);
+        CountDownLatch latch = new CountDownLatch (1);
+        executor.execute (() -> {
+            try {
+                latch.await ();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread ().interrupt ();
+            }
+        });
+        executor.execute (() -> {}); // Queued
+
+        try {
+            executor.execute (() -> {});
+            fail ("Task accepted with the pool and the queue full");
+        }
+        catch (RejectedExecutionException e) {
+            // Expected
+        }
+        finally {
+            latch.countDown ();
+            executor.shutdown ();
+        }
+
+        assertTrue (executor.awaitTermination (10, TimeUnit.SECONDS));
+    }
+
+    public void bounded_threads_are_named () throws Exception {
+        ExecutorService executor = Threads.boundedThreads ("test");
+        Thread thread = executor.submit (Thread::currentThread).get (10, TimeUnit.SECONDS);
+        executor.shutdown ();
+
+        assertTrue (thread.isDaemon ());
+        assertTrue (thread.getName ().startsWith ("test-"));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina;
+
+import static sabina.HttpMethod.GET;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import sabina.jmh.Mocks;
+import sabina.route.RouteMatch;
+import sabina.route.RouteMatcher;
+import sabina.route.RouteMatcherFactory;
+import sabina.server.Exchange;
+import sabina.server.ServletExchange;
+
+/**
+ * Creation of the request passed to handlers and extraction of its parameters and splat
+ * (routes with 'depth' parameters and a trailing wildcard).
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class RequestBenchmark {
+    @Param ({ "1", "3", "6" }) int depth;
+
+    private RouteMatch match;
+    private Exchange exchange;
+    private String lastParameter;
+
+    @Setup public void setup () {
+        final StringBuilder route = new StringBuilder ("/resource");
+        final StringBuilder path = new StringBuilder ("/resource");
+        for (int ii = 1; ii <= depth; ii++) {
+            route.append ("/:p").append (ii);
+            path.append ("/v").append (ii);
+        }
+        route.append ("/*");
+        path.append ("/rest/of/path");
+
+        final RouteMatcher matcher = RouteMatcherFactory.create ();
+        matcher.processRoute (new Route (GET, route.toString (), "*/*", it -> ""));
+        match = matcher.findTarget (GET, path.toString (), null);
+        exchange = new ServletExchange (
+            Mocks.request ("GET", path.toString (), null), Mocks.response ());
+        lastParameter = ":p" + depth;
+    }
+
+    @Benchmark public Request create () {
+        return Request.create (match, exchange);
+    }
+
+    @Benchmark public void createAndExtract (Blackhole blackhole) {
+        final Request created = Request.create (match, exchange);
+        blackhole.consume (created.params (lastParameter));
+        blackhole.consume (created.splat ());
+    }
+}
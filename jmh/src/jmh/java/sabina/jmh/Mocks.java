@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.jmh;
+
+import static java.lang.reflect.Proxy.newProxyInstance;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet requests and responses for the benchmarks (without a container). Methods not used
+ * by the framework in the benchmarked paths return the default value of their type.
+ */
+public final class Mocks {
+    /** Output stream that discards the response body. */
+    private static final class NullOutputStream extends ServletOutputStream {
+        @Override public boolean isReady () {
+            return true;
+        }
+
+        @Override public void setWriteListener (WriteListener writeListener) {
+            // Not used
+        }
+
+        @Override public void write (int b) {
+            // Discarded
+        }
+
+        @Override public void write (byte[] b, int off, int len) {
+            // Discarded
+        }
+    }
+
+    public static HttpServletRequest request (String method, String uri, String accept) {
+        return proxy (HttpServletRequest.class, (proxy, call, args) -> {
+            switch (call.getName ()) {
+                case "getMethod": return method;
+                case "getRequestURI": return uri;
+                case "getPathInfo": return uri;
+                case "getHeader": return "Accept".equals (args[0])? accept : null;
+                default: return defaultValue (call.getReturnType ());
+            }
+        });
+    }
+
+    /**
+     * Request supporting asynchronous processing.
+     *
+     * @param completed Run when the request is completed (after being suspended).
+     * @param suspended Set when the request is suspended.
+     */
+    public static HttpServletRequest asyncRequest (
+        String method, String uri, String accept, Runnable completed, AtomicBoolean suspended) {
+
+        final HttpServletRequest request = request (method, uri, accept);
+        final AsyncContext context = proxy (AsyncContext.class, (proxy, call, args) -> {
+            if (call.getName ().equals ("complete"))
+                completed.run ();
+            return defaultValue (call.getReturnType ());
+        });
+
+        return proxy (HttpServletRequest.class, (proxy, call, args) -> {
+            switch (call.getName ()) {
+                case "isAsyncSupported": return true;
+                case "isAsyncStarted": return suspended.get ();
+                case "startAsync":
+                    suspended.set (true);
+                    return context;
+                default: return call.invoke (request, args);
+            }
+        });
+    }
+
+    public static HttpServletResponse response () {
+        final ServletOutputStream output = new NullOutputStream ();
+        return proxy (HttpServletResponse.class, (proxy, call, args) ->
+            call.getName ().equals ("getOutputStream")?
+                output : defaultValue (call.getReturnType ())
+        );
+    }
+
+    @SuppressWarnings ("unchecked")
+    private static <T> T proxy (Class<T> type, InvocationHandler handler) {
+        return (T)newProxyInstance (Mocks.class.getClassLoader (), new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue (Class<?> type) {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        return null;
+    }
+
+    private Mocks () { throw new IllegalStateException (); }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route paths and matching requests for the benchmarks.
+ *
+ * <p>Route 'i' has 'depth' segments: 'r{i}' followed by static ('s{n}') or parameter (':p{n}')
+ * segments depending on the kind: 'static', 'dynamic' or 'mixed' (odd routes are dynamic).
+ */
+public final class Routes {
+    public static List<String> routes (int count, int depth, String kind) {
+        final List<String> routes = new ArrayList<> (count);
+        for (int ii = 0; ii < count; ii++) {
+            final boolean dynamic =
+                kind.equals ("dynamic") || (kind.equals ("mixed") && ii % 2 == 1);
+
+            final StringBuilder route = new StringBuilder ("/r").append (ii);
+            for (int jj = 1; jj < depth; jj++)
+                route.append (dynamic? "/:p" : "/s").append (jj);
+            routes.add (route.toString ());
+        }
+        return routes;
+    }
+
+    /** Returns a path matching a route (parameters are replaced by values). */
+    public static String request (String route) {
+        return route.replace ("/:p", "/v");
+    }
+
+    /**
+     * Returns up to 'size' requests spread among the routes (to avoid hitting always the same
+     * path in the benchmarks).
+     */
+    public static String[] requests (List<String> routes, int size) {
+        final int count = Math.min (size, routes.size ());
+        final String[] requests = new String[count];
+        for (int ii = 0; ii < count; ii++)
+            requests[ii] = request (routes.get (ii * routes.size () / count));
+        return requests;
+    }
+
+    private Routes () { throw new IllegalStateException (); }
+}
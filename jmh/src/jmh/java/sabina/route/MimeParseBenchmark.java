@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.route;
+
+import static java.util.Arrays.asList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Content negotiation: scoring an 'Accept' header against the types supported by a route.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class MimeParseBenchmark {
+    @Param ({
+        "*/*",
+        "application/json",
+        "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8"
+    })
+    String header;
+
+    private final List<String> types = asList ("application/json", "text/html", "text/plain");
+    private final List<MediaType> mediaTypes = asList (
+        new MediaType ("application/json"), new MediaType ("text/html"),
+        new MediaType ("text/plain")
+    );
+
+    @Benchmark public int bestMatch () {
+        return MimeParse.bestMatch (mediaTypes, header);
+    }
+
+    @Benchmark public String bestMatchOfStrings () {
+        return MimeParse.bestMatch (types, header);
+    }
+}
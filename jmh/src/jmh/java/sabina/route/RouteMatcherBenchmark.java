@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.route;
+
+import static sabina.HttpMethod.GET;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import sabina.Route;
+import sabina.jmh.Routes;
+
+/**
+ * Lookup of the route (or routes) matching a request path, for different route table sizes
+ * and path depths. The 'mixed' kind has static and parameter routes.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class RouteMatcherBenchmark {
+    private static final String ACCEPT = "application/json, text/html;q=0.9, */*;q=0.1";
+
+    @Param ({ "10", "100", "1000", "10000" }) int routes;
+    @Param ({ "1", "3", "6" }) int depth;
+    @Param ({ "static", "dynamic", "mixed" }) String kind;
+    @Param ({ "simple", "tree" }) String router;
+
+    private RouteMatcher matcher;
+    private String[] requests;
+    private int next;
+
+    @Setup public void setup () {
+        matcher = RouteMatcherFactory.create (router);
+
+        final List<String> paths = Routes.routes (routes, depth, kind);
+        for (String path : paths)
+            matcher.processRoute (new Route (GET, path, "*/*", it -> path));
+        matcher.freeze ();
+
+        requests = Routes.requests (paths, 64);
+    }
+
+    private String nextRequest () {
+        final String request = requests[next];
+        next = next + 1 == requests.length? 0 : next + 1;
+        return request;
+    }
+
+    @Benchmark public RouteMatch findTarget () {
+        return matcher.findTarget (GET, nextRequest (), null);
+    }
+
+    @Benchmark public RouteMatch findTargetWithAccept () {
+        return matcher.findTarget (GET, nextRequest (), ACCEPT);
+    }
+
+    @Benchmark public List<RouteMatch> findTargets () {
+        return matcher.findTargets (GET, nextRequest (), null);
+    }
+
+    @Benchmark public RouteMatch findTargetMissing () {
+        return matcher.findTarget (GET, "/missing/path", null);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.server;
+
+import static java.lang.System.getProperty;
+import static java.lang.management.ManagementFactory.getClassLoadingMXBean;
+import static java.lang.management.ManagementFactory.getMemoryMXBean;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.*;
+import java.lang.management.MemoryMXBean;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import sabina.Route;
+import sabina.Server;
+
+/**
+ * Time from the launch of a JVM running a server with one route until its first response.
+ * Each invocation starts a new JVM (class loading and initialization are measured every
+ * time).
+ *
+ * <p>Once started, the memory used by the server (RSS on Linux, heap and non heap after a
+ * collection) and the number of loaded classes are printed in the benchmark output.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.SingleShotTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+public class BackendStartupBenchmark {
+    private static final int PORT = 5060;
+
+    @Param ({ "jdk", "netty", "undertow-native", "undertow", "grizzly", "jetty" })
+    String backend;
+
+    private Process server;
+
+    @Benchmark public int startup () throws Exception {
+        server = new ProcessBuilder (
+            getProperty ("java.home") + "/bin/java",
+            "-cp", getProperty ("java.class.path"),
+            BackendStartupBenchmark.class.getName (),
+            backend)
+            .inheritIO ()
+            .start ();
+
+        int status = -1;
+        while (status == -1) {
+            try {
+                status = get ("/").getResponseCode ();
+            }
+            catch (IOException e) {
+                if (!server.isAlive ())
+                    throw new IllegalStateException ("Server exited: " + server.exitValue ());
+                Thread.sleep (1);
+            }
+        }
+        return status;
+    }
+
+    @TearDown (Level.Invocation) public void stop () throws Exception {
+        try (InputStream memory = get ("/memory").getInputStream ()) {
+            final BufferedReader lines = new BufferedReader (new InputStreamReader (memory, UTF_8));
+            System.out.println ();
+            System.out.println (backend + ": " + lines.readLine ());
+        }
+        finally {
+            server.destroy ();
+            server.waitFor ();
+        }
+    }
+
+    /**
+     * Runs the measured server.
+     *
+     * @param args The backend.
+     */
+    public static void main (String... args) {
+        final Server server = new Server (args[0], PORT);
+        server.get ("/", it -> "ok");
+        server.get ("/memory", (Route.Handler)it -> memory ());
+        server.start ();
+    }
+
+    private static HttpURLConnection get (String path) throws IOException {
+        return (HttpURLConnection)new URL ("http://localhost:" + PORT + path).openConnection ();
+    }
+
+    private static String memory () {
+        System.gc ();
+        final MemoryMXBean memory = getMemoryMXBean ();
+        return String.format ("rss=%s heap=%dKB nonHeap=%dKB classes=%d",
+            rss (),
+            memory.getHeapMemoryUsage ().getUsed () / 1024,
+            memory.getNonHeapMemoryUsage ().getUsed () / 1024,
+            getClassLoadingMXBean ().getLoadedClassCount ());
+    }
+
+    /** @return The resident set size of the process (only available on Linux). */
+    private static String rss () {
+        try {
+            return Files.readAllLines (Paths.get ("/proc/self/status")).stream ()
+                .filter (it -> it.startsWith ("VmRSS:"))
+                .map (it -> it.substring (6).trim ().replace (" ", ""))
+                .findFirst ()
+                .orElse ("n/a");
+        }
+        catch (IOException e) {
+            return "n/a";
+        }
+    }
+}
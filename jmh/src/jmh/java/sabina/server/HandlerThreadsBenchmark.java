@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.server;
+
+import static sabina.HttpMethod.GET;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.*;
+import sabina.Route;
+import sabina.jmh.Mocks;
+import sabina.route.RouteMatcher;
+import sabina.route.RouteMatcherFactory;
+
+/**
+ * Blocking handlers (like the JDBC queries of the benchmark application) run in a bounded
+ * pool of backend workers ('worker' mode) or in virtual threads ('virtual' mode). Many
+ * clients send requests at the same time: throughput and latency percentiles (SampleTime)
+ * show the cost of pinning the workers while handlers wait.
+ *
+ * <p>The 'virtual' mode needs JDK 21+ (its setup fails on older JDKs).
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode ({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Threads (128)
+public class HandlerThreadsBenchmark {
+    @Param ({ "worker", "virtual" }) String mode;
+    /** Backend worker threads (Undertow defaults to eight per core). */
+    @Param ({ "16" }) int workers;
+    /** Time blocked by each handler (simulates a query). */
+    @Param ({ "1" }) int blockMillis;
+
+    private MatcherFilter filter;
+    private ExecutorService backend;
+    private ExecutorService handlers;
+    private HttpServletResponse response;
+
+    @Setup public void setup () {
+        final RouteMatcher matcher = RouteMatcherFactory.create ();
+        matcher.processRoute (new Route (GET, "/query", "*/*", it -> {
+            try {
+                Thread.sleep (blockMillis);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread ().interrupt ();
+            }
+            return "[]";
+        }));
+        matcher.freeze ();
+
+        handlers = mode.equals ("virtual")? sabina.util.Threads.virtualThreads ("handler") : null;
+        filter = new MatcherFilter (matcher, "undertow", false, handlers);
+        backend = Executors.newFixedThreadPool (workers);
+        response = Mocks.response ();
+    }
+
+    @TearDown public void tearDown () {
+        backend.shutdownNow ();
+        if (handlers != null)
+            handlers.shutdownNow ();
+    }
+
+    @Benchmark public void request () throws Exception {
+        final CompletableFuture<Void> done = new CompletableFuture<> ();
+        final AtomicBoolean suspended = new AtomicBoolean ();
+        final HttpServletRequest request = Mocks.asyncRequest (
+            "GET", "/query", "*/*", () -> done.complete (null), suspended);
+
+        backend.execute (() -> {
+            try {
+                filter.doFilter (request, response, null);
+                if (!suspended.get ())
+                    done.complete (null);
+            }
+            catch (Exception e) {
+                done.completeExceptionally (e);
+            }
+        });
+
+        done.get ();
+    }
+}
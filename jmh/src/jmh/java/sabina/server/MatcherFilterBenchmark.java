@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.server;
+
+import static sabina.HttpMethod.AFTER;
+import static sabina.HttpMethod.BEFORE;
+import static sabina.HttpMethod.GET;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.*;
+import sabina.Route;
+import sabina.jmh.Mocks;
+import sabina.jmh.Routes;
+import sabina.route.RouteMatcher;
+import sabina.route.RouteMatcherFactory;
+
+/**
+ * Complete handling of a request by the servlet filter (filters, route and response body)
+ * with servlet objects that do no I/O.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class MatcherFilterBenchmark {
+    @Param ({ "10", "100", "1000", "10000" }) int routes;
+    @Param ({ "1", "3", "6" }) int depth;
+    @Param ({ "mixed" }) String kind;
+    @Param ({ "simple", "tree" }) String router;
+
+    private MatcherFilter filter;
+    private HttpServletRequest[] requests;
+    private HttpServletRequest missing;
+    private HttpServletResponse response;
+    private int next;
+
+    @Setup public void setup () {
+        final RouteMatcher matcher = RouteMatcherFactory.create (router);
+
+        final List<String> paths = Routes.routes (routes, depth, kind);
+        matcher.processRoute (new Route (BEFORE, Route.ALL_PATHS, "*/*", it -> null));
+        for (String path : paths)
+            matcher.processRoute (new Route (GET, path, "*/*", it -> "Hello World!"));
+        matcher.processRoute (new Route (AFTER, "/r1/*", "*/*", it -> null));
+        matcher.freeze ();
+
+        filter = new MatcherFilter (matcher, "undertow", false);
+
+        final String[] requestPaths = Routes.requests (paths, 64);
+        requests = new HttpServletRequest[requestPaths.length];
+        for (int ii = 0; ii < requestPaths.length; ii++)
+            requests[ii] = Mocks.request ("GET", requestPaths[ii], "*/*");
+
+        missing = Mocks.request ("GET", "/missing/path", "*/*");
+        response = Mocks.response ();
+    }
+
+    @Benchmark public void doFilter () throws IOException, ServletException {
+        filter.doFilter (requests[next], response, null);
+        next = next + 1 == requests.length? 0 : next + 1;
+    }
+
+    @Benchmark public void doFilterMissing () throws IOException, ServletException {
+        filter.doFilter (missing, response, null);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2015 Juan José Aguililla. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package sabina.server;
+
+import static java.lang.System.currentTimeMillis;
+import static sabina.HttpMethod.AFTER;
+import static sabina.HttpMethod.GET;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.sun.management.ThreadMXBean;
+import org.openjdk.jmh.annotations.*;
+import sabina.Constant;
+import sabina.Route;
+import sabina.jmh.Mocks;
+import sabina.route.RouteMatcher;
+import sabina.route.RouteMatcherFactory;
+
+/**
+ * Memory allocated to handle a request to '/plaintext' of the benchmark application: a
+ * constant route and 'filters' AFTER filters adding the common headers.
+ *
+ * <p>The bytes allocated by each request (taken from the ThreadMXBean of the benchmark
+ * thread) are printed at the end of every iteration. They include the mocked servlet objects.
+ *
+ * <p>Handlers of other types are called before the benchmark, like in an application with
+ * many routes. Otherwise the handler calls are inlined and the JIT removes the request
+ * objects, something that does not happen in a server.
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+public class RequestAllocationBenchmark {
+    private static final ThreadMXBean THREADS = (ThreadMXBean)ManagementFactory.getThreadMXBean ();
+
+    @Param ({ "1", "3" }) int filters;
+
+    private MatcherFilter filter;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+
+    private long allocated;
+    private long requests;
+
+    @Setup public void setup () {
+        final RouteMatcher matcher = RouteMatcherFactory.create ();
+        matcher.processRoute (new Route (GET, "/json", "*/*", it -> "{}"));
+        matcher.processRoute (
+            new Route (GET, "/plaintext", "*/*", new Constant ("text/plain", "Hello, World!")));
+        for (int ii = 0; ii < filters; ii++)
+            matcher.processRoute (new Route (AFTER, Route.ALL_PATHS, "*/*", it -> {
+                it.header ("Server", "Sabina");
+                it.response.addDateHeader ("Date", currentTimeMillis ());
+                return null;
+            }));
+        matcher.freeze ();
+
+        final Route.Handler[] others = { it -> "a", it -> 'b', it -> 3, it -> 4L };
+        for (int ii = 0; ii < 10_000; ii++)
+            new Route (GET, "/", "*/*", others[ii % others.length]).handle (null);
+
+        filter = new MatcherFilter (matcher, "undertow", false);
+        request = Mocks.request ("GET", "/plaintext", "*/*");
+        response = Mocks.response ();
+    }
+
+    @Setup (Level.Iteration) public void start () {
+        requests = 0;
+        allocated = allocatedBytes ();
+    }
+
+    @Benchmark public boolean plaintext () throws IOException {
+        requests++;
+        return filter.handle (request, response);
+    }
+
+    @TearDown (Level.Iteration) public void stop () {
+        System.out.println ();
+        System.out.printf ("filters=%d: %d bytes/request%n",
+            filters, (allocatedBytes () - allocated) / requests);
+    }
+
+    private static long allocatedBytes () {
+        return THREADS.getThreadAllocatedBytes (Thread.currentThread ().getId ());
+    }
+}